@@ -0,0 +1,46 @@
+package com.github.cap5lut.ratelimits;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two threads acquire and cancel slots while the rate limit resets concurrently.
+ */
+@JCStressTest
+@Description("Cancel never returns a slot into a later rate.")
+@Outcome(id = {"0", "1", "2"}, expect = Expect.ACCEPTABLE, desc = "At most capacity slots are available.")
+@Outcome(expect = Expect.FORBIDDEN, desc = "The rate limit was overfilled.")
+@State
+public class ConcurrentRateLimitCancelResetStressTest {
+    private final RateLimit rateLimit = new ConcurrentRateLimit(2, 50, TimeUnit.MICROSECONDS);
+
+    @Actor
+    public void actor1() {
+        acquireAndCancel();
+    }
+
+    @Actor
+    public void actor2() {
+        acquireAndCancel();
+    }
+
+    @Arbiter
+    public void arbiter(I_Result r) {
+        r.r1 = (int) rateLimit.getRemaining();
+    }
+
+    private void acquireAndCancel() {
+        long rateID = rateLimit.tryAcquireAndGetRateID(1);
+        if(rateID >= 0) {
+            rateLimit.cancel(rateID);
+        }
+    }
+}
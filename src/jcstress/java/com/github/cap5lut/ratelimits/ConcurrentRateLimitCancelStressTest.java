@@ -0,0 +1,47 @@
+package com.github.cap5lut.ratelimits;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two threads acquire and cancel slots within a single rate. Resets are covered by
+ * {@link ConcurrentRateLimitCancelResetStressTest}.
+ */
+@JCStressTest
+@Description("Cancel never overfills and no cancelled slot is lost.")
+@Outcome(id = "2", expect = Expect.ACCEPTABLE, desc = "All slots are available again.")
+@Outcome(expect = Expect.FORBIDDEN, desc = "Slots were lost or the rate limit was overfilled.")
+@State
+public class ConcurrentRateLimitCancelStressTest {
+    private final RateLimit rateLimit = new ConcurrentRateLimit(2, 1, TimeUnit.HOURS);
+
+    @Actor
+    public void actor1() {
+        acquireAndCancel();
+    }
+
+    @Actor
+    public void actor2() {
+        acquireAndCancel();
+    }
+
+    @Arbiter
+    public void arbiter(I_Result r) {
+        r.r1 = (int) rateLimit.getRemaining();
+    }
+
+    private void acquireAndCancel() {
+        long rateID = rateLimit.tryAcquireAndGetRateID(1);
+        if(rateID >= 0) {
+            rateLimit.cancel(rateID);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.github.cap5lut.ratelimits;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.ZZ_Result;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two threads race for the last slot of a rate.
+ */
+@JCStressTest
+@Description("Never more than capacity grants per rate.")
+@Outcome(id = {"true, false", "false, true"}, expect = Expect.ACCEPTABLE, desc = "Exactly one thread got the slot.")
+@Outcome(id = "true, true", expect = Expect.FORBIDDEN, desc = "The slot was granted twice.")
+@Outcome(id = "false, false", expect = Expect.FORBIDDEN, desc = "The slot was lost.")
+@State
+public class ConcurrentRateLimitCapacityStressTest {
+    private final RateLimit rateLimit = new ConcurrentRateLimit(1, 1, TimeUnit.HOURS);
+
+    @Actor
+    public void actor1(ZZ_Result r) {
+        r.r1 = rateLimit.tryAcquire();
+    }
+
+    @Actor
+    public void actor2(ZZ_Result r) {
+        r.r2 = rateLimit.tryAcquire();
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.cap5lut.ratelimits;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.II_Result;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thread acquires a slot while the capacity is doubled concurrently.
+ */
+@JCStressTest
+@Description("Reconfiguration neither loses nor duplicates acquisitions.")
+@Outcome(id = {"1, 2", "1, 3"}, expect = Expect.ACCEPTABLE,
+        desc = "The slot was carried over or acquired after the reconfiguration.")
+@Outcome(expect = Expect.FORBIDDEN, desc = "The acquisition was lost or granted beyond the capacity.")
+@State
+public class ConcurrentRateLimitReconfigureStressTest {
+    private final RateLimit rateLimit = new ConcurrentRateLimit(2, 1, TimeUnit.HOURS);
+
+    private boolean acquired;
+
+    @Actor
+    public void actor1() {
+        acquired = rateLimit.tryAcquire();
+    }
+
+    @Actor
+    public void actor2() {
+        rateLimit.reconfigure(4, 1, TimeUnit.HOURS);
+    }
+
+    @Arbiter
+    public void arbiter(II_Result r) {
+        r.r1 = acquired ? 1 : 0;
+        r.r2 = (int) rateLimit.getRemaining();
+    }
+}
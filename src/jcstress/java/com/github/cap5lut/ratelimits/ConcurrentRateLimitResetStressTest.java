@@ -0,0 +1,43 @@
+package com.github.cap5lut.ratelimits;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two threads acquire a slot while the rate limit resets concurrently.
+ */
+@JCStressTest
+@Description("Never more than capacity grants per rate ID, even while resetting.")
+@Outcome(id = "0", expect = Expect.ACCEPTABLE, desc = "Each rate granted at most one slot.")
+@Outcome(id = "1", expect = Expect.FORBIDDEN, desc = "One rate granted two slots.")
+@State
+public class ConcurrentRateLimitResetStressTest {
+    private final RateLimit rateLimit = new ConcurrentRateLimit(1, 20, TimeUnit.MICROSECONDS);
+
+    private long rateID1;
+
+    private long rateID2;
+
+    @Actor
+    public void actor1() {
+        rateID1 = rateLimit.tryAcquireAndGetRateID(1);
+    }
+
+    @Actor
+    public void actor2() {
+        rateID2 = rateLimit.tryAcquireAndGetRateID(1);
+    }
+
+    @Arbiter
+    public void arbiter(I_Result r) {
+        r.r1 = rateID1 >= 0 && rateID1 == rateID2 ? 1 : 0;
+    }
+}
@@ -0,0 +1,44 @@
+package com.github.cap5lut.ratelimits;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two threads acquire a slot of the same key from a sketch of two rows, whose rows are updated one by one.
+ */
+@JCStressTest
+@Description("A key is never granted more than its capacity, even if the rows are updated in different orders.")
+@Outcome(id = {"0", "1"}, expect = Expect.ACCEPTABLE, desc = "At most the capacity was granted.")
+@Outcome(id = "2", expect = Expect.FORBIDDEN, desc = "The key was granted more than its capacity.")
+@State
+public class CountMinKeyedRateLimitCapacityStressTest {
+    private final CountMinKeyedRateLimit<String> rateLimit = new CountMinKeyedRateLimit<>(1, 1, TimeUnit.HOURS, 0.5,
+            0.2, 0, RateLimit.defaultYielder);
+
+    private boolean acquired1;
+
+    private boolean acquired2;
+
+    @Actor
+    public void actor1() {
+        acquired1 = rateLimit.tryAcquire("a");
+    }
+
+    @Actor
+    public void actor2() {
+        acquired2 = rateLimit.tryAcquire("a");
+    }
+
+    @Arbiter
+    public void arbiter(I_Result r) {
+        r.r1 = (acquired1 ? 1 : 0) + (acquired2 ? 1 : 0);
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.cap5lut.ratelimits;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Three threads acquire a slot from a rate limit whose long window allows two slots, while the short window resets
+ * concurrently.
+ */
+@JCStressTest
+@Description("Never more than capacity grants per window.")
+@Outcome(id = {"1", "2"}, expect = Expect.ACCEPTABLE, desc = "The long window granted at most its capacity.")
+@Outcome(expect = Expect.FORBIDDEN, desc = "The long window was overfilled or all slots were lost.")
+@State
+public class MultiWindowRateLimitCapacityStressTest {
+    private final RateLimit rateLimit = MultiWindowRateLimit.builder()
+            .window(1, 20, TimeUnit.MICROSECONDS)
+            .window(2, 1, TimeUnit.HOURS)
+            .build();
+
+    private boolean acquired1;
+
+    private boolean acquired2;
+
+    private boolean acquired3;
+
+    @Actor
+    public void actor1() {
+        acquired1 = rateLimit.tryAcquire();
+    }
+
+    @Actor
+    public void actor2() {
+        acquired2 = rateLimit.tryAcquire();
+    }
+
+    @Actor
+    public void actor3() {
+        acquired3 = rateLimit.tryAcquire();
+    }
+
+    @Arbiter
+    public void arbiter(I_Result r) {
+        r.r1 = (acquired1 ? 1 : 0) + (acquired2 ? 1 : 0) + (acquired3 ? 1 : 0);
+    }
+}
@@ -0,0 +1,55 @@
+package com.github.cap5lut.ratelimits;
+
+import org.openjdk.jcstress.annotations.Actor;
+import org.openjdk.jcstress.annotations.Arbiter;
+import org.openjdk.jcstress.annotations.Description;
+import org.openjdk.jcstress.annotations.Expect;
+import org.openjdk.jcstress.annotations.JCStressTest;
+import org.openjdk.jcstress.annotations.Outcome;
+import org.openjdk.jcstress.annotations.State;
+import org.openjdk.jcstress.infra.results.I_Result;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two threads block for the single slot of a rate, so one of them has to wait for a reset. A slot taken from a state that
+ * was reset in between must not be handed out with the rate ID of that outdated state.
+ */
+@JCStressTest
+@Description("Slots are never acquired from an outdated rate.")
+@Outcome(id = "1", expect = Expect.ACCEPTABLE, desc = "Both threads acquired a slot in different rates.")
+@Outcome(id = "0", expect = Expect.FORBIDDEN, desc = "Both threads acquired a slot in the same rate.")
+@State
+public class WarmingUpRateLimitResetStressTest {
+    private final RateLimit rateLimit = new WarmingUpRateLimit(1, 50, TimeUnit.MICROSECONDS, 1, 50, 50,
+            TimeUnit.MICROSECONDS, RateLimit.highResYielder);
+
+    private long rateID1;
+
+    private long rateID2;
+
+    @Actor
+    public void actor1() {
+        rateID1 = acquire();
+    }
+
+    @Actor
+    public void actor2() {
+        rateID2 = acquire();
+    }
+
+    @Arbiter
+    public void arbiter(I_Result r) {
+        r.r1 = rateID1 != rateID2 ? 1 : 0;
+    }
+
+    private long acquire() {
+        try {
+            return rateLimit.acquireAndGetRateID();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+}
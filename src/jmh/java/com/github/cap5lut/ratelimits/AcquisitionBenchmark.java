@@ -0,0 +1,75 @@
+package com.github.cap5lut.ratelimits;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the acquisition fast path of {@link RateLimited} and {@link RateLimit#acquireAll(RateLimit...)}.
+ * The rate limits have a practically unlimited capacity, so every acquisition succeeds without waiting.
+ * Run with {@code -PjmhArgs="AcquisitionBenchmark -prof gc"} to confirm that {@link RateLimited#acquire()} does not
+ * allocate ({@code gc.alloc.rate.norm} of zero bytes per operation).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(2)
+@State(Scope.Benchmark)
+public class AcquisitionBenchmark {
+    /**
+     * Instance limited by a single rate limit.
+     */
+    private RateLimited<Object> single;
+
+    /**
+     * Instance limited by three rate limits.
+     */
+    private RateLimited<Object> multiple;
+
+    /**
+     * Rate limits of {@link #multiple}.
+     */
+    private RateLimit[] rateLimits;
+
+    /**
+     * Creates the rate limited instances.
+     */
+    @Setup
+    public void setup() {
+        Object instance = new Object();
+        rateLimits = new RateLimit[] {
+                new ConcurrentRateLimit(Long.MAX_VALUE, 1, TimeUnit.DAYS),
+                new ConcurrentRateLimit(Long.MAX_VALUE, 1, TimeUnit.HOURS),
+                new ConcurrentRateLimit(Long.MAX_VALUE, 1, TimeUnit.MINUTES)
+        };
+        single = new RateLimited<>(instance, rateLimits[0]);
+        multiple = new RateLimited<>(instance, rateLimits);
+    }
+
+    @Benchmark
+    public Object rateLimitedSingle() throws InterruptedException {
+        return single.acquire();
+    }
+
+    @Benchmark
+    public Object rateLimitedMultiple() throws InterruptedException {
+        return multiple.acquire();
+    }
+
+    @Benchmark
+    public void acquireAll() throws InterruptedException {
+        RateLimit.acquireAll(rateLimits);
+    }
+}
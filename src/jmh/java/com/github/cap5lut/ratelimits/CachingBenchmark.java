@@ -0,0 +1,58 @@
+package com.github.cap5lut.ratelimits;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares acquisitions from a heavily shared {@link ConcurrentRateLimit} with and without a {@link CachingRateLimit}
+ * in front of it. The rate limits have a practically unlimited capacity, so every acquisition succeeds without waiting.
+ * Run with {@code -PjmhArgs="CachingBenchmark -t <threads>"} to vary the contention.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class CachingBenchmark {
+    /**
+     * Shared rate limit.
+     */
+    private RateLimit shared;
+
+    /**
+     * Caching rate limit in front of another shared rate limit.
+     */
+    private RateLimit cached;
+
+    /**
+     * Creates the rate limits.
+     */
+    @Setup
+    public void setup() {
+        shared = new ConcurrentRateLimit(Long.MAX_VALUE, 1, TimeUnit.DAYS);
+        cached = new CachingRateLimit(new ConcurrentRateLimit(Long.MAX_VALUE, 1, TimeUnit.DAYS), 64, Long.MAX_VALUE);
+    }
+
+    @Benchmark
+    public long shared() throws InterruptedException {
+        return shared.acquireAndGetRateID();
+    }
+
+    @Benchmark
+    public long cached() throws InterruptedException {
+        return cached.acquireAndGetRateID();
+    }
+}
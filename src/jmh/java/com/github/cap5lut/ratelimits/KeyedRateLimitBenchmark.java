@@ -0,0 +1,120 @@
+package com.github.cap5lut.ratelimits;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link CountMinKeyedRateLimit} with one {@link ConcurrentRateLimit} per key under a Zipf distributed key
+ * workload, as typical for per client limits. Run with {@code -prof gc} to compare the allocations, the exact variant
+ * keeps one rate limit per distinct key alive.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class KeyedRateLimitBenchmark {
+    /**
+     * Per thread position within the key sequence.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        /**
+         * Next index.
+         */
+        private int index = new Random().nextInt(SAMPLES);
+
+        /**
+         * Gets the next key.
+         * @param keys Key sequence.
+         * @return Returns the next key.
+         */
+        private Integer next(Integer[] keys) {
+            index = (index + 1) & (SAMPLES - 1);
+            return keys[index];
+        }
+    }
+
+    /**
+     * Length of the precomputed key sequence.
+     */
+    private static final int SAMPLES = 1 << 20;
+
+    /**
+     * Amount of distinct keys.
+     */
+    @Param({"1000000"})
+    public int distinctKeys;
+
+    /**
+     * Zipf exponent.
+     */
+    @Param({"1.1"})
+    public double exponent;
+
+    /**
+     * Precomputed Zipf distributed key sequence.
+     */
+    private Integer[] keys;
+
+    /**
+     * Sketch based keyed rate limit.
+     */
+    private CountMinKeyedRateLimit<Integer> sketch;
+
+    /**
+     * Exact keyed rate limits.
+     */
+    private ConcurrentHashMap<Integer, RateLimit> exact;
+
+    /**
+     * Creates the key sequence and the rate limits.
+     */
+    @Setup
+    public void setup() {
+        double[] cumulative = new double[distinctKeys];
+        double sum = 0;
+        for(int rank = 0; rank < distinctKeys; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+
+        Random random = new Random(42);
+        keys = new Integer[SAMPLES];
+        for(int i = 0; i < SAMPLES; i++) {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            keys[i] = rank < 0 ? -rank - 1 : rank;
+        }
+
+        sketch = new CountMinKeyedRateLimit<>(100, 1, TimeUnit.SECONDS);
+        exact = new ConcurrentHashMap<>();
+    }
+
+    @Benchmark
+    public boolean sketch(Cursor cursor) {
+        return sketch.tryAcquire(cursor.next(keys));
+    }
+
+    @Benchmark
+    public boolean exact(Cursor cursor) {
+        return exact.computeIfAbsent(cursor.next(keys), k -> new ConcurrentRateLimit(100, 1, TimeUnit.SECONDS))
+                .tryAcquire();
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.cap5lut.ratelimits;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per call overhead of {@link RateLimitedProxy} with a direct call and a reflective proxy, which resolves
+ * the target method and its rate limits once and invokes the target via {@link Method#invoke(Object, Object...)}.
+ * The rate limit has a practically unlimited capacity, so only the dispatch and acquisition costs are measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateLimitedProxyBenchmark {
+    /**
+     * Benchmarked interface.
+     */
+    @Limited("limit")
+    public interface Counter {
+        /**
+         * Increments the counter.
+         * @param delta Delta.
+         * @return Returns the new value.
+         */
+        long add(long delta);
+    }
+
+    /**
+     * Benchmarked implementation.
+     */
+    public static class SimpleCounter implements Counter {
+        /**
+         * Current value.
+         */
+        private long value;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long add(long delta) {
+            return value += delta;
+        }
+    }
+
+    /**
+     * Direct instance.
+     */
+    private Counter direct;
+
+    /**
+     * Method handle dispatching proxy.
+     */
+    private Counter proxy;
+
+    /**
+     * Reflective proxy.
+     */
+    private Counter reflective;
+
+    /**
+     * Creates the instances.
+     */
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        RateLimit rateLimit = new ConcurrentRateLimit(Long.MAX_VALUE, 1, TimeUnit.DAYS);
+        SimpleCounter counter = new SimpleCounter();
+        direct = counter;
+        proxy = RateLimitedProxy.builder(Counter.class, counter)
+                .bind("limit", rateLimit)
+                .build();
+        Method target = SimpleCounter.class.getMethod("add", long.class);
+        boolean limited = Counter.class.isAnnotationPresent(Limited.class);
+        reflective = (Counter) Proxy.newProxyInstance(Counter.class.getClassLoader(), new Class<?>[] {Counter.class},
+                (instance, method, args) -> {
+                    if(limited) {
+                        RateLimit.acquireAll(rateLimit);
+                    }
+                    return target.invoke(counter, args);
+                });
+    }
+
+    @Benchmark
+    public long direct() {
+        return direct.add(1);
+    }
+
+    @Benchmark
+    public long proxy() {
+        return proxy.add(1);
+    }
+
+    @Benchmark
+    public long reflective() {
+        return reflective.add(1);
+    }
+}
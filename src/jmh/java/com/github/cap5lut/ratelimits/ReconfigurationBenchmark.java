@@ -0,0 +1,63 @@
+package com.github.cap5lut.ratelimits;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to reconfigure a large amount of rate limits at once, e.g. after receiving new limits from a
+ * remote service.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReconfigurationBenchmark {
+    /**
+     * Amount of rate limits.
+     */
+    @Param({"10000"})
+    private int size;
+
+    /**
+     * Rate limits to reconfigure.
+     */
+    private RateLimit[] rateLimits;
+
+    /**
+     * Capacity of the next reconfiguration.
+     */
+    private long capacity = 100;
+
+    /**
+     * Creates the rate limits, each having used half of its capacity.
+     */
+    @Setup
+    public void setup() {
+        rateLimits = new RateLimit[size];
+        for(int i = 0; i < size; i++) {
+            rateLimits[i] = new ConcurrentRateLimit(capacity, 1, TimeUnit.HOURS);
+            rateLimits[i].tryAcquireAndGetRateID(capacity / 2);
+        }
+    }
+
+    @Benchmark
+    public void reconfigureAll() {
+        capacity = capacity == 100 ? 200 : 100;
+        for(RateLimit rateLimit: rateLimits) {
+            rateLimit.reconfigure(capacity, 1, TimeUnit.HOURS);
+        }
+    }
+}
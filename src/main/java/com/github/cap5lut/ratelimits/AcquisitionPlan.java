@@ -0,0 +1,156 @@
+package com.github.cap5lut.ratelimits;
+
+import java.util.Arrays;
+
+/**
+ * Precompiled acquisition of slots from multiple rate limits.
+ * The rate limits are ordered once on creation, longest reset interval first, and the acquired rate IDs are kept in a
+ * per thread array shared by all plans, so acquiring neither allocates nor mutates shared state besides the rate limits
+ * themselves.
+ */
+final class AcquisitionPlan {
+    /**
+     * Per thread storage of the acquired rate IDs, grown to the longest plan used by the thread.
+     */
+    private static final ThreadLocal<long[]> RATE_IDS = new ThreadLocal<>();
+
+    /**
+     * Per thread storage of the rate limits ordered by {@link #acquireAll(RateLimit[])}, grown to the most rate limits
+     * passed by the thread.
+     */
+    private static final ThreadLocal<RateLimit[]> ORDERED = new ThreadLocal<>();
+
+    /**
+     * Acquires a slot from all rate limits, the one probably taking the longest first.
+     * Unlike a plan, the order depends on the current state of the rate limits, so they are sorted on every call within
+     * per thread storage.
+     * NOTE: It will release unused slots.
+     * @param rateLimits Rate limits to acquire a slot from, the array will not be modified.
+     * @throws InterruptedException if the thread was interrupted while acquiring a slot.
+     */
+    static void acquireAll(RateLimit[] rateLimits) throws InterruptedException {
+        int length = rateLimits.length;
+        RateLimit[] ordered = getOrdered(length);
+        System.arraycopy(rateLimits, 0, ordered, 0, length);
+        try {
+            Arrays.sort(ordered, 0, length, RateLimit::sortByLongestAcquirationFirst);
+            acquire(ordered, length, getRateIDs(length));
+        }
+        finally {
+            Arrays.fill(ordered, 0, length, null); // do not keep the rate limits reachable
+        }
+    }
+
+    /**
+     * Acquires a slot from all rate limits in the given order.
+     * NOTE: It will release unused slots.
+     * @param rateLimits Rate limits to acquire a slot from.
+     * @param length Amount of rate limits to acquire a slot from, starting with the first one.
+     * @param rateIDs Storage of the acquired rate IDs, at least as long as the rate limits.
+     * @throws InterruptedException if the thread was interrupted while acquiring a slot.
+     */
+    private static void acquire(RateLimit[] rateLimits, int length, long[] rateIDs) throws InterruptedException {
+        for(int i = 0; i < length; i++) {
+            rateIDs[i] = rateLimits[i].acquireAndGetRateID();
+        }
+
+        while(!areValid(rateLimits, length, rateIDs)) {
+            // cancel valid slots
+            for(int i = 0; i < length; i++) {
+                rateLimits[i].cancel(rateIDs[i]);
+            }
+
+            // reacquire
+            for(int i = 0; i < length; i++) {
+                rateIDs[i] = rateLimits[i].acquireAndGetRateID();
+            }
+        }
+    }
+
+    /**
+     * Checks if all acquired slots are still valid.
+     * @param rateLimits Rate limits.
+     * @param length Amount of rate limits slots were acquired from.
+     * @param rateIDs Acquired rate IDs.
+     * @return Returns {@code true} if all slots are valid.
+     */
+    private static boolean areValid(RateLimit[] rateLimits, int length, long[] rateIDs) {
+        for(int i = 0; i < length; i++) {
+            if(rateLimits[i].getCurrentRateID() != rateIDs[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares which of the given rate limits resets less frequently and should therefore be acquired first.
+     * @param o1 Rate limit 1.
+     * @param o2 Rate limit 2.
+     * @return Returns a negative value if {@code o1} should be acquired first, a positive value if {@code o2} should be
+     *         acquired first, or {@code 0} otherwise.
+     */
+    private static int sortByLongestResetIntervalFirst(RateLimit o1, RateLimit o2) {
+        int order = Long.compare(o2.getResetInterval(), o1.getResetInterval());
+        return order != 0 ? order : Long.compare(o1.getCapacity(), o2.getCapacity());
+    }
+
+    /**
+     * Gets the per thread storage of the acquired rate IDs.
+     * @param length Minimum length.
+     * @return Returns the storage.
+     */
+    private static long[] getRateIDs(int length) {
+        long[] rateIDs = RATE_IDS.get();
+        if(rateIDs == null || rateIDs.length < length) {
+            rateIDs = new long[length];
+            RATE_IDS.set(rateIDs);
+        }
+        return rateIDs;
+    }
+
+    /**
+     * Gets the per thread storage of the ordered rate limits.
+     * @param length Minimum length.
+     * @return Returns the storage.
+     */
+    private static RateLimit[] getOrdered(int length) {
+        RateLimit[] ordered = ORDERED.get();
+        if(ordered == null || ordered.length < length) {
+            ordered = new RateLimit[length];
+            ORDERED.set(ordered);
+        }
+        return ordered;
+    }
+
+    /**
+     * Ordered rate limits.
+     */
+    private final RateLimit[] rateLimits;
+
+    /**
+     * Creates a new acquisition plan.
+     * @param rateLimits Rate limits, the array will not be modified.
+     */
+    AcquisitionPlan(RateLimit... rateLimits) {
+        this.rateLimits = rateLimits.clone();
+        Arrays.sort(this.rateLimits, AcquisitionPlan::sortByLongestResetIntervalFirst);
+    }
+
+    /**
+     * Acquires a slot from all rate limits.
+     * NOTE: It will release unused slots.
+     * @throws InterruptedException if the thread was interrupted while acquiring a slot.
+     */
+    void acquire() throws InterruptedException {
+        switch(rateLimits.length) {
+            case 0:
+                return;
+            case 1: // speed up if only one rate limit is planned
+                rateLimits[0].acquireAndGetRateID();
+                return;
+            default:
+                acquire(rateLimits, rateLimits.length, getRateIDs(rateLimits.length));
+        }
+    }
+}
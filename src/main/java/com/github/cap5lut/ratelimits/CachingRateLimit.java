@@ -0,0 +1,380 @@
+package com.github.cap5lut.ratelimits;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link RateLimit} decorator caching batches of slots per thread.
+ * <p>
+ * Each thread acquires a batch of slots from the decorated rate limit at once and serves further acquisitions from its
+ * thread local cache with plain reads and writes, so heavily shared rate limits are only hit once per batch instead of
+ * once per acquisition. Cached slots are already accounted by the decorated rate limit, so no rate ever grants more than
+ * its capacity. Instead slots can be stranded: leftovers cached by one thread are not available to other threads and
+ * expire with their rate. The amount of leftovers per rate is bounded by {@code maxStranded}, once reached, threads
+ * acquire from the decorated rate limit directly. Threads going idle can return their leftovers with {@link #flush()}.
+ * </p>
+ * <p>
+ * {@link #getRemaining()} does not include cached slots. The decorated rate limit must only be reconfigured through
+ * this decorator, which invalidates all caches.
+ * </p>
+ */
+public class CachingRateLimit implements RateLimit {
+    /**
+     * Thread local batch of slots.
+     */
+    private static final class Cache {
+        /**
+         * Rate ID of the cached slots.
+         */
+        private long rateID = -1;
+
+        /**
+         * Time stamp in nano seconds at which the cached slots expire.
+         */
+        private long expires;
+
+        /**
+         * Configuration generation the slots were cached in.
+         */
+        private int generation;
+
+        /**
+         * Amount of cached slots.
+         */
+        private long remaining;
+
+        /**
+         * Amount of leftovers accounted for this batch.
+         */
+        private long accounted;
+    }
+
+    /**
+     * Leftovers of the current rate.
+     */
+    private static final class Stranded {
+        /**
+         * Rate ID.
+         */
+        private final long rateID;
+
+        /**
+         * Amount of accounted leftovers.
+         */
+        private final long slots;
+
+        /**
+         * Creates a new instance.
+         * @param rateID Rate ID.
+         * @param slots Amount of accounted leftovers.
+         */
+        private Stranded(long rateID, long slots) {
+            this.rateID = rateID;
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * Decorated rate limit.
+     */
+    private final RateLimit rateLimit;
+
+    /**
+     * Amount of slots acquired from the decorated rate limit per batch.
+     */
+    private final long batchSize;
+
+    /**
+     * Maximum amount of leftovers cached per rate.
+     */
+    private final long maxStranded;
+
+    /**
+     * Thread local caches.
+     */
+    private final ThreadLocal<Cache> caches = ThreadLocal.withInitial(Cache::new);
+
+    /**
+     * Accounted leftovers of the current rate.
+     */
+    private final AtomicReference<Stranded> stranded = new AtomicReference<>(new Stranded(-1, 0));
+
+    /**
+     * Configuration generation, caches of older generations are invalid.
+     */
+    private volatile int generation;
+
+    /**
+     * Creates a new caching rate limit.
+     * @param rateLimit Rate limit to decorate.
+     * @param batchSize Amount of slots acquired from the decorated rate limit per batch.
+     * @param maxStranded Maximum amount of leftovers cached per rate, zero disables caching.
+     */
+    public CachingRateLimit(RateLimit rateLimit, long batchSize, long maxStranded) {
+        if(batchSize < 1) {
+            throw new IllegalArgumentException("batch size must be at least 1");
+        }
+        if(maxStranded < 0) {
+            throw new IllegalArgumentException("max stranded slots must not be negative");
+        }
+        this.rateLimit = rateLimit;
+        this.batchSize = batchSize;
+        this.maxStranded = maxStranded;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long acquireAndGetRateID() throws InterruptedException {
+        return acquireAndGetRateID(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Acquires from the decorated rate limit directly if no batch can be cached.
+     */
+    @Override
+    public long acquireAndGetRateID(long slots) throws InterruptedException {
+        long rateID = tryAcquireAndGetRateID(slots);
+        return rateID >= 0 ? rateID : rateLimit.acquireAndGetRateID(slots);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long tryAcquireAndGetRateID(long slots) {
+        Cache cache = caches.get();
+        if(cache.remaining >= slots && cache.generation == generation
+                && rateLimit.getTicker().nanoTime() < cache.expires) {
+            cache.remaining -= slots;
+            if(cache.remaining == 0) {
+                release(cache.rateID, cache.accounted);
+            }
+            return cache.rateID;
+        }
+
+        flush(cache);
+        if(slots < batchSize) {
+            long rateID = tryFill(cache, slots);
+            if(rateID >= 0) {
+                return rateID;
+            }
+        }
+        return rateLimit.tryAcquireAndGetRateID(slots);
+    }
+
+    /**
+     * Returns the leftovers cached by the current thread to the decorated rate limit.
+     * Should be called by threads going idle, as their leftovers are stranded otherwise.
+     */
+    public void flush() {
+        flush(caches.get());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel(long rateID) {
+        return rateLimit.cancel(rateID);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel(long rateID, long slots) {
+        return rateLimit.cancel(rateID, slots);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Reserved slots are not cached.
+     */
+    @Override
+    public Reservation reserve(long slots) {
+        return rateLimit.reserve(slots);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Invalidates all caches, leftovers are returned on the next acquisition of their thread.
+     */
+    @Override
+    public void reconfigure(long capacity, long resetInterval, TimeUnit resetUnit) {
+        rateLimit.reconfigure(capacity, resetInterval, resetUnit);
+        generation++; // a lost update of concurrent reconfigurations still invalidates the caches
+    }
+
+    /**
+     * Gets the decorated rate limit.
+     * @return Returns the decorated rate limit.
+     */
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * Gets the amount of slots acquired from the decorated rate limit per batch.
+     * @return Returns the batch size.
+     */
+    public long getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Gets the maximum amount of leftovers cached per rate.
+     * @return Returns the maximum amount of stranded slots.
+     */
+    public long getMaxStranded() {
+        return maxStranded;
+    }
+
+    /**
+     * Gets the amount of leftovers cached in the current rate.
+     * The amount is an upper bound, slots served from caches are only accounted once their batch is used up.
+     * @return Returns the amount of cached slots.
+     */
+    public long getCached() {
+        Stranded current = stranded.get();
+        return current.rateID == rateLimit.getCurrentRateID() ? current.slots : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCapacity() {
+        return rateLimit.getCapacity();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getNextReset() {
+        return rateLimit.getNextReset();
+    }
+
+    /**
+     * {@inheritDoc}
+     * Slots cached by threads are not included.
+     */
+    @Override
+    public long getRemaining() {
+        return rateLimit.getRemaining();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCurrentRateID() {
+        return rateLimit.getCurrentRateID();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getResetInterval() {
+        return rateLimit.getResetInterval();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Ticker getTicker() {
+        return rateLimit.getTicker();
+    }
+
+    /**
+     * Acquires a new batch into an empty cache.
+     * @param cache Empty cache of the current thread.
+     * @param slots Amount of slots to acquire from the batch.
+     * @return Returns the rate ID the slots were acquired from, or {@code -1} if no batch could be cached.
+     */
+    private long tryFill(Cache cache, long slots) {
+        int generation = this.generation;
+        long rateID;
+        long expires;
+        do { // the reset time stamp has to belong to the rate ID
+            rateID = rateLimit.getCurrentRateID();
+            expires = rateLimit.getNextReset();
+        } while(rateLimit.getCurrentRateID() != rateID);
+
+        long leftovers = account(rateID, Math.min(batchSize, rateLimit.getRemaining()) - slots);
+        if(leftovers <= 0) {
+            return -1;
+        }
+        long acquiredRateID = rateLimit.tryAcquireAndGetRateID(slots + leftovers);
+        if(acquiredRateID != rateID) { // not enough slots remaining or reset in the meantime
+            if(acquiredRateID >= 0) {
+                rateLimit.cancel(acquiredRateID, slots + leftovers);
+            }
+            release(rateID, leftovers);
+            return -1;
+        }
+        cache.rateID = rateID;
+        cache.expires = expires;
+        cache.generation = generation;
+        cache.remaining = leftovers;
+        cache.accounted = leftovers;
+        return rateID;
+    }
+
+    /**
+     * Returns the leftovers of a cache to the decorated rate limit.
+     * Leftovers of a past rate can not be returned anymore and expire.
+     * @param cache Cache of the current thread.
+     */
+    private void flush(Cache cache) {
+        if(cache.remaining > 0) {
+            rateLimit.cancel(cache.rateID, cache.remaining);
+            release(cache.rateID, cache.accounted);
+            cache.remaining = 0;
+        }
+    }
+
+    /**
+     * Accounts leftovers of a new batch.
+     * @param rateID Rate ID of the batch.
+     * @param leftovers Wanted amount of leftovers.
+     * @return Returns the accounted amount of leftovers, limited by the maximum amount of stranded slots.
+     */
+    private long account(long rateID, long leftovers) {
+        Stranded current;
+        long slots;
+        long accounted;
+        do {
+            current = stranded.get();
+            if(current.rateID > rateID) { // outdated
+                return 0;
+            }
+            slots = current.rateID == rateID ? current.slots : 0;
+            accounted = Math.min(leftovers, maxStranded - slots);
+            if(accounted <= 0) {
+                return 0;
+            }
+        } while(!stranded.compareAndSet(current, new Stranded(rateID, slots + accounted)));
+        return accounted;
+    }
+
+    /**
+     * Releases accounted leftovers.
+     * @param rateID Rate ID of the batch.
+     * @param leftovers Accounted amount of leftovers.
+     */
+    private void release(long rateID, long leftovers) {
+        Stranded current;
+        do {
+            current = stranded.get();
+            if(current.rateID != rateID) { // accounting already moved on to a later rate
+                return;
+            }
+        } while(!stranded.compareAndSet(current, new Stranded(rateID, current.slots - leftovers)));
+    }
+}
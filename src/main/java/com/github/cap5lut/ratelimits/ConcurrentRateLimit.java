@@ -1,12 +1,58 @@
 package com.github.cap5lut.ratelimits;
 
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicStampedReference;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Lock-free {@link RateLimit} implementation.
+ * Each rate is represented by an immutable state holding an atomic counter of the remaining slots, so acquiring and
+ * cancelling slots do not allocate. A new state is only created on resets and reconfigurations. Future rates containing
+ * reserved slots get their counter ahead of time, which becomes the counter of their state once they start. Such a
+ * counter keeps the capacity it was created with, so a reconfiguration never has to adjust it; the rate picking it up
+ * offsets it to its own capacity instead.
  */
 public class ConcurrentRateLimit implements RateLimit {
+    /**
+     * Remaining slots of a state being replaced by a reconfiguration.
+     */
+    private static final long FROZEN = Long.MIN_VALUE;
+
+    /**
+     * Remaining slots of a future rate.
+     */
+    private static final class FutureRemaining extends AtomicLong {
+        /**
+         * Serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Capacity the remaining slots are based on.
+         */
+        private final long capacity;
+
+        /**
+         * Creates new remaining slots of a future rate.
+         * @param capacity Rate limit capacity.
+         */
+        private FutureRemaining(long capacity) {
+            super(capacity);
+            this.capacity = capacity;
+        }
+
+        /**
+         * Gets the difference of a capacity to the capacity the remaining slots are based on.
+         * @param capacity Rate limit capacity.
+         * @return Returns the offset to add to the remaining slots.
+         */
+        private long getOffset(long capacity) {
+            return capacity - this.capacity;
+        }
+    }
+
     /**
      * Rate limit state.
      */
@@ -17,9 +63,14 @@ public class ConcurrentRateLimit implements RateLimit {
         private final long nextReset;
 
         /**
-         * Remaining rate limit slots.
+         * Remaining rate limit slots, before adding the offset.
+         */
+        private final AtomicLong remaining;
+
+        /**
+         * Offset of the remaining slots to the capacity, if they were counted for another capacity ahead of time.
          */
-        private final long remaining;
+        private final long offset;
 
         /**
          * Rate ID.
@@ -27,118 +78,158 @@ public class ConcurrentRateLimit implements RateLimit {
         private final long rateID;
 
         /**
-         * Resetting thread.
+         * Rate limit capacity.
          */
-        private final Thread resetter;
+        private final long capacity;
+
+        /**
+         * Rate limit reset interval in nano seconds.
+         */
+        private final long resetInterval;
+
+        /**
+         * Whether the rate was reconfigured, or its slots were reserved before, so slots acquired before may exceed
+         * the capacity when returned.
+         */
+        private final boolean reconfigured;
 
         /**
          * Creates a new initial state.
+         * @param capacity Rate limit capacity.
+         * @param resetInterval Rate limit reset interval in nano seconds.
          */
-        private State() {
-            this(System.nanoTime() + resetInterval, capacity, 0, null);
+        private State(long capacity, long resetInterval) {
+            this(ticker.nanoTime() + resetInterval, new AtomicLong(capacity), 0, 0, capacity, resetInterval, false);
         }
 
         /**
          * Creates a new state.
          * @param nextReset Next reset timestamp in nano seconds.
          * @param remaining Remaining slots.
+         * @param offset Offset of the remaining slots to the capacity.
          * @param rateID Rate ID.
-         * @param resetter Resetting thread.
+         * @param capacity Rate limit capacity.
+         * @param resetInterval Rate limit reset interval in nano seconds.
+         * @param reconfigured Whether the rate was reconfigured.
          */
-        private State(long nextReset, long remaining, long rateID, Thread resetter) {
+        private State(long nextReset, AtomicLong remaining, long offset, long rateID, long capacity,
+                long resetInterval, boolean reconfigured) {
             this.nextReset = nextReset;
             this.remaining = remaining;
+            this.offset = offset;
             this.rateID = rateID;
-            this.resetter = resetter;
-        }
-
-        /**
-         * Gets the state with the current thread as resetter.
-         * @return Returns the resetting state.
-         */
-        private State getResettingState() {
-            return new State(nextReset, remaining, rateID, Thread.currentThread());
+            this.capacity = capacity;
+            this.resetInterval = resetInterval;
+            this.reconfigured = reconfigured || offset != 0;
         }
 
         /**
          * Gets the resetted state.
+         * Slots reserved for the new rate are not available anymore.
          * @return Returns the resetted state.
          */
         private State getResettedState() {
-            long skippedRates = (long) (Math.floor((System.nanoTime() - nextReset) / (resetInterval * 1.0d)) + 1);
-            return new State(nextReset + skippedRates * resetInterval, capacity, rateID + skippedRates, null);
+            long skippedRates = (long) (Math.floor((ticker.nanoTime() - nextReset) / (resetInterval * 1.0d)) + 1);
+            long nextRateID = rateID + skippedRates;
+            long sealed;
+            do {
+                sealed = sealedRateID.get();
+            } while(sealed < nextRateID && !sealedRateID.compareAndSet(sealed, nextRateID));
+            FutureRemaining nextRemaining = futureRemaining.isEmpty() ? null : futureRemaining.get(nextRateID);
+            if(nextRemaining == null) {
+                return new State(nextReset + skippedRates * resetInterval, new AtomicLong(capacity), 0, nextRateID,
+                        capacity, resetInterval, false);
+            }
+            return new State(nextReset + skippedRates * resetInterval, nextRemaining,
+                    nextRemaining.getOffset(capacity), nextRateID, capacity, resetInterval, false);
         }
 
         /**
-         * Gets the decremented state.
-         * @return Returns the decremented state.
+         * Gets the reconfigured state.
+         * The used slots of the current rate are carried over proportionally to the new capacity and the current rate
+         * ends after the new reset interval.
+         * @param remaining Remaining slots of this state, before adding the offset.
+         * @param capacity New rate limit capacity.
+         * @param resetInterval New rate limit reset interval in nano seconds.
+         * @return Returns the reconfigured state.
          */
-        private State getDecrementedState() {
-            if(remaining < 1) {
-                throw new IllegalStateException("remaining must not become lower than zero");
-            }
-
-            return new State(nextReset, remaining - 1, rateID, null);
+        private State getReconfiguredState(long remaining, long capacity, long resetInterval) {
+            long used = Math.min(this.capacity, this.capacity - (remaining + offset));
+            long carriedOver = (long) Math.ceil(used * (capacity / (double) this.capacity));
+            return new State(nextReset - this.resetInterval + resetInterval,
+                    new AtomicLong(Math.max(0, capacity - carriedOver)), 0, rateID, capacity, resetInterval, true);
         }
 
         /**
-         * Gets the incremented state.
-         * @return Returns the incremented state.
+         * Tries to take slots from the remaining slots.
+         * @param slots Slots to take.
+         * @return Returns {@code true} if the slots were taken.
          */
-        private State getIncrementedState() {
-            if(remaining == capacity) {
-                throw new IllegalStateException("remaining must not become greater than the capacity");
-            }
-            return new State(nextReset, remaining + 1, rateID, resetter);
+        private boolean tryDecrement(long slots) {
+            return ConcurrentRateLimit.tryDecrement(remaining, offset, slots);
         }
 
         /**
-         * Checks if the state is outdated.
-         * @return Returns {@code true} if the state is outdated.
+         * Returns slots to the remaining slots.
+         * @param slots Slots to return.
+         * @return Returns {@code false} if the state is being reconfigured.
          */
-        private boolean hasToUpdate() {
-            return System.nanoTime() >= nextReset;
+        private boolean tryIncrement(long slots) {
+            long current;
+            do {
+                current = remaining.get();
+                if(current == FROZEN) {
+                    return false;
+                }
+                if(current + offset + slots > capacity && !reconfigured) {
+                    throw new IllegalStateException("remaining must not become greater than the capacity");
+                }
+            } while(!remaining.compareAndSet(current, Math.min(capacity - offset, current + slots)));
+            return true;
         }
 
         /**
-         * Checks if waiting for the next reset is needed.
-         * @return Returns {@code true} if waiting for the next reset is needed.
+         * Checks if the slots can be acquired at all.
+         * @param slots Slots to acquire.
          */
-        private boolean hasToWait() {
-            return System.nanoTime() < nextReset;
+        private void checkSlots(long slots) {
+            if(slots < 1 || slots > capacity) {
+                throw new IllegalArgumentException("slots must be between 1 and the capacity");
+            }
         }
 
         /**
-         * Checks if a given rate ID is the current rate ID.
-         * @param rateID Rate ID.
-         * @return Returns {@code true} if the given rate ID is the current rate ID.
+         * Gets the remaining slots.
+         * @return Returns the remaining slots.
          */
-        private boolean isCurrentRate(long rateID) {
-            return this.rateID == rateID;
+        private long getRemaining() {
+            long current = remaining.get();
+            return current == FROZEN ? 0 : Math.max(0, current + offset);
         }
 
         /**
-         * Checks if there are no remaining slots available.
-         * @return Returns {@code true} if there are no remaining slots available.
+         * Checks if the state is being replaced by a reconfiguration.
+         * @return Returns {@code true} if the remaining slots are frozen.
          */
-        private boolean isEmpty() {
-            return remaining == 0;
+        private boolean isFrozen() {
+            return remaining.get() == FROZEN;
         }
 
         /**
-         * Checks if the state will be resetted.
-         * @return Returns {@code true} if the state will be resetted.
+         * Checks if the state is outdated.
+         * @return Returns {@code true} if the state is outdated.
          */
-        private boolean isResetting() {
-            return resetter != null;
+        private boolean hasToUpdate() {
+            return ticker.nanoTime() >= nextReset;
         }
 
         /**
-         * Checks if the current thread is the resetting thread.
-         * @return Returns {@code true} if the current thread is the resetting thread.
+         * Checks if a given rate ID is the current rate ID.
+         * @param rateID Rate ID.
+         * @return Returns {@code true} if the given rate ID is the current rate ID.
          */
-        private boolean isResetter() {
-            return resetter == Thread.currentThread();
+        private boolean isCurrentRate(long rateID) {
+            return this.rateID == rateID;
         }
     }
 
@@ -148,19 +239,36 @@ public class ConcurrentRateLimit implements RateLimit {
     private final Yielder yielder;
 
     /**
-     * Rate limit capacity.
+     * Time source.
      */
-    private final long capacity;
+    private final Ticker ticker;
 
     /**
-     * Rate limit reset interval in nano seconds.
+     * Current rate limit state.
      */
-    private final long resetInterval;
+    private final AtomicReference<State> currentState;
 
     /**
-     * Current rate limit state.
+     * Remaining slots of future rates containing reserved slots by rate ID.
+     */
+    private final ConcurrentNavigableMap<Long, FutureRemaining> futureRemaining = new ConcurrentSkipListMap<>();
+
+    /**
+     * Rate ID of the latest rate a reset was started for.
+     * Resets publish it before looking up the counter of their rate, so reservations and cancellations of that rate
+     * seeing it have to check whether the counter was picked up.
      */
-    private final AtomicStampedReference<State> currentState;
+    private final AtomicLong sealedRateID = new AtomicLong();
+
+    /**
+     * Hint of the first future rate which may have unreserved slots, rates before are skipped by reservations.
+     */
+    private final AtomicLong openRateID = new AtomicLong();
+
+    /**
+     * Maximum time in nano seconds a reservation may lie in the future.
+     */
+    private volatile long reservationHorizon = Long.MAX_VALUE;
 
     /**
      * Creates a new rate limit with the default yielder.
@@ -180,10 +288,21 @@ public class ConcurrentRateLimit implements RateLimit {
      * @param yielder Yielder.
      */
     public ConcurrentRateLimit(long capacity, long resetInterval, TimeUnit resetUnit, Yielder yielder) {
-        this.capacity = capacity;
-        this.resetInterval = resetUnit.toNanos(resetInterval);
+        this(capacity, resetInterval, resetUnit, yielder, systemTicker);
+    }
+
+    /**
+     * Creates a new rate limit on a custom time source.
+     * @param capacity Rate limit capacity.
+     * @param resetInterval Rate limit reset interval.
+     * @param resetUnit Rate limit reset interval unit.
+     * @param yielder Yielder.
+     * @param ticker Time source.
+     */
+    public ConcurrentRateLimit(long capacity, long resetInterval, TimeUnit resetUnit, Yielder yielder, Ticker ticker) {
         this.yielder = yielder;
-        currentState = new AtomicStampedReference<>(new State(), 0);
+        this.ticker = ticker;
+        currentState = new AtomicReference<>(new State(capacity, resetUnit.toNanos(resetInterval)));
     }
 
     /**
@@ -191,40 +310,52 @@ public class ConcurrentRateLimit implements RateLimit {
      */
     @Override
     public long acquireAndGetRateID() throws InterruptedException {
-        int[] stampHolder = new int[1];
+        return acquireAndGetRateID(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long acquireAndGetRateID(long slots) throws InterruptedException {
         State current;
-        State next;
         while(true) {
-            current = getUpdatedState(stampHolder);
-            if(current.isEmpty()) {
-                // TODO: can this be done differently by letting all threads try to reset?
-                if (current.isResetter()) {
-                    if (current.hasToWait()) { // wait until its time to reset
-                        yielder.yield();
-                        continue;
-                    }
-                    else {
-                        next = current.getResettedState(); // its time to reset
-                    }
-                }
-                else if(current.isResetting()){ // wait for reset
-                    yielder.yield();
-                    continue;
-                }
-                else { // resetting needs to be started
-                    next = current.getResettingState();
+            current = getUpdatedState();
+            current.checkSlots(slots);
+            if(current.tryDecrement(slots)) {
+                if(isCurrent(current)) {
+                    return current.rateID;
                 }
+                current.tryIncrement(slots); // the rate was reset in between
+                continue;
             }
-            else{
-                next = current.getDecrementedState();
-                if(currentState.compareAndSet(current, current.getDecrementedState(), stampHolder[0], stampHolder[0] + 1)) {
-                    return next.rateID;
+            if(Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            yielder.yield(); // wait for the next reset or reconfiguration
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long tryAcquireAndGetRateID(long slots) {
+        State current;
+        while(true) {
+            current = getUpdatedState();
+            current.checkSlots(slots);
+            if(current.tryDecrement(slots)) {
+                if(isCurrent(current)) {
+                    return current.rateID;
                 }
+                current.tryIncrement(slots); // the rate was reset in between
                 continue;
             }
-
-            // set the new state
-            currentState.compareAndSet(current, next, stampHolder[0], stampHolder[0] + 1);
+            if(!current.isFrozen()) {
+                return -1;
+            }
+            Thread.yield(); // wait for the reconfiguration
         }
     }
 
@@ -233,26 +364,153 @@ public class ConcurrentRateLimit implements RateLimit {
      */
     @Override
     public boolean cancel(long rateID) {
-        int[] stampHolder = new int[1];
+        return cancel(rateID, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Slots reserved for a future rate can be returned until that rate is over.
+     */
+    @Override
+    public boolean cancel(long rateID, long slots) {
         State current;
+        FutureRemaining remaining;
+        long value;
         while(true) {
-            current = getUpdatedState(stampHolder);
+            current = getUpdatedState();
 
-            if(!current.isCurrentRate(rateID)) { // is not the same rate id anymore
+            if(current.isCurrentRate(rateID)) {
+                if(current.tryIncrement(slots)) {
+                    return isCurrent(current); // the rate might have been reset in between
+                }
+                continue; // is being reconfigured
+            }
+            remaining = futureRemaining.get(rateID);
+            if(rateID < current.rateID || remaining == null) { // outdated or never reserved
                 return false;
             }
-            if(currentState.compareAndSet(current, current.getIncrementedState(), stampHolder[0], stampHolder[0] + 1)) {
-                return true;
+            do {
+                value = remaining.get();
+            } while(!remaining.compareAndSet(value, Math.min(remaining.capacity, value + slots)));
+            do {
+                value = openRateID.get();
+            } while(value > rateID && !openRateID.compareAndSet(value, rateID));
+            return isPickedUp(rateID, remaining);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The slots are taken from the current rate, if it has enough remaining slots, or otherwise from the first future
+     * rate having enough unreserved slots.
+     * @return Returns the reservation or {@code null} if the slots would become valid after the reservation horizon.
+     */
+    @Override
+    public Reservation reserve(long slots) {
+        State current;
+        FutureRemaining remaining;
+        long rateID;
+        long validAt;
+        boolean full;
+        while(true) {
+            current = getUpdatedState();
+            current.checkSlots(slots);
+            if(current.tryDecrement(slots)) {
+                if(isCurrent(current)) {
+                    return new Reservation(this, current.rateID, slots, ticker.nanoTime());
+                }
+                current.tryIncrement(slots); // the rate was reset in between
+                continue;
+            }
+            if(current.isFrozen()) { // wait for the reconfiguration
+                Thread.yield();
+                continue;
+            }
+
+            rateID = openRateID.get();
+            if(rateID <= current.rateID) {
+                rateID = current.rateID + 1;
+                openRateID.set(rateID); // hint of a past rate
+            }
+            full = true;
+            while(true) {
+                validAt = current.nextReset + (rateID - current.rateID - 1) * current.resetInterval;
+                if(validAt - ticker.nanoTime() > reservationHorizon) {
+                    return null;
+                }
+                remaining = getFutureRemaining(rateID, current.capacity);
+                if(tryDecrement(remaining, remaining.getOffset(current.capacity), slots)) {
+                    break;
+                }
+                full &= remaining.get() + remaining.getOffset(current.capacity) <= 0;
+                if(full && openRateID.get() == rateID) { // all rates up to this one are fully reserved
+                    openRateID.compareAndSet(rateID, rateID + 1);
+                }
+                rateID++;
+            }
+
+            if(isPickedUp(rateID, remaining) && isConfigured(current)) {
+                return new Reservation(this, rateID, slots, validAt);
+            }
+            remaining.addAndGet(slots); // the rate started without the counter, is already over or was reconfigured
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Waiting threads pick up the new configuration with their next attempt. Reservations keep their rate ID, but
+     * their validity time stamp is not updated for a changed reset interval. Future rates keep their reserved slots
+     * within the new capacity.
+     */
+    @Override
+    public void reconfigure(long capacity, long resetInterval, TimeUnit resetUnit) {
+        if(capacity < 1 || resetInterval < 1) {
+            throw new IllegalArgumentException("capacity and reset interval must be greater than zero");
+        }
+
+        long interval = resetUnit.toNanos(resetInterval);
+        State current;
+        long remaining;
+        while(true) {
+            current = getUpdatedState();
+            remaining = current.remaining.getAndSet(FROZEN);
+            if(remaining == FROZEN) { // reconfigured concurrently
+                Thread.yield();
+                continue;
+            }
+            if(currentState.compareAndSet(current, current.getReconfiguredState(remaining, capacity, interval))) {
+                return;
             }
+            current.remaining.set(remaining); // state changed in between, unfreeze and retry
         }
     }
 
+    /**
+     * Gets the reservation horizon.
+     * @return Returns the maximum time in nano seconds a reservation may lie in the future.
+     */
+    public long getReservationHorizon() {
+        return reservationHorizon;
+    }
+
+    /**
+     * Sets the reservation horizon.
+     * Reservations becoming valid later than the horizon will be rejected.
+     * @param horizon Maximum time a reservation may lie in the future.
+     * @param unit Horizon unit.
+     * @return Returns itself for method chaining.
+     */
+    public ConcurrentRateLimit setReservationHorizon(long horizon, TimeUnit unit) {
+        reservationHorizon = unit.toNanos(horizon);
+        return this;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public long getCapacity() {
-        return capacity;
+        return currentState.get().capacity;
     }
 
     /**
@@ -276,7 +534,7 @@ public class ConcurrentRateLimit implements RateLimit {
      */
     @Override
     public long getRemaining() {
-        return getUpdatedState().remaining;
+        return getUpdatedState().getRemaining();
     }
 
     /**
@@ -284,32 +542,102 @@ public class ConcurrentRateLimit implements RateLimit {
      */
     @Override
     public long getResetInterval() {
-        return resetInterval;
+        return currentState.get().resetInterval;
     }
 
     /**
-     * Updates the current state for missing resets.
-     * @return Returns the updated state.
+     * {@inheritDoc}
      */
-    private State getUpdatedState() {
-        return getUpdatedState(new int[1]);
+    @Override
+    public Ticker getTicker() {
+        return ticker;
     }
 
     /**
      * Updates the current state for missing resets.
-     * @param stampHolder Stamp holder.
      * @return Returns the updated state.
      */
-    private State getUpdatedState(int[] stampHolder) {
+    private State getUpdatedState() {
         State current;
         State next;
         do {
-            current = currentState.get(stampHolder);
+            current = currentState.get();
             if(!current.hasToUpdate()) {
                 return current;
             }
             next = current.getResettedState();
-        } while(!currentState.compareAndSet(current, next, stampHolder[0], stampHolder[0] + 1));
+        } while(!currentState.compareAndSet(current, next));
+        if(!futureRemaining.isEmpty()) {
+            futureRemaining.headMap(next.rateID, true).clear(); // the state holds its own counter
+        }
         return next;
     }
+
+    /**
+     * Checks if changes to the counter of a state took effect.
+     * A reset replaces the counter, so changes after it are lost. A reconfiguration freezes the counter and carries
+     * over the changes done before, so the rate stays valid.
+     * @param state State whose counter was changed.
+     * @return Returns {@code true} if the rate of the state is still the current rate.
+     */
+    private boolean isCurrent(State state) {
+        State current = currentState.get();
+        return current == state || current.rateID == state.rateID;
+    }
+
+    /**
+     * Checks if the capacity did not change since a state was read, so slots reserved in a future rate based on its
+     * capacity are within the capacity of that rate.
+     * @param state State the reserved slots were based on.
+     * @return Returns {@code true} if the capacity did not change.
+     */
+    private boolean isConfigured(State state) {
+        State current = currentState.get();
+        return current.capacity == state.capacity && !current.isFrozen();
+    }
+
+    /**
+     * Checks if the counter of a future rate is or will be picked up by the reset to that rate.
+     * Either the reset sees the counter, or this sees the reset and waits for its state.
+     * @param rateID Rate ID.
+     * @param remaining Counter of the rate.
+     * @return Returns {@code true} if changes to the counter take effect.
+     */
+    private boolean isPickedUp(long rateID, AtomicLong remaining) {
+        return sealedRateID.get() < rateID || getUpdatedState().remaining == remaining;
+    }
+
+    /**
+     * Gets the remaining slots of a future rate.
+     * @param rateID Rate ID.
+     * @param capacity Rate limit capacity.
+     * @return Returns the remaining slots.
+     */
+    private FutureRemaining getFutureRemaining(long rateID, long capacity) {
+        FutureRemaining remaining = futureRemaining.get(rateID);
+        if(remaining == null) {
+            FutureRemaining created = new FutureRemaining(capacity);
+            remaining = futureRemaining.putIfAbsent(rateID, created);
+            return remaining == null ? created : remaining;
+        }
+        return remaining;
+    }
+
+    /**
+     * Tries to take slots from remaining slots.
+     * @param remaining Remaining slots.
+     * @param offset Offset of the remaining slots to the capacity.
+     * @param slots Slots to take.
+     * @return Returns {@code true} if the slots were taken.
+     */
+    private static boolean tryDecrement(AtomicLong remaining, long offset, long slots) {
+        long current;
+        do {
+            current = remaining.get();
+            if(current == FROZEN || current + offset < slots) { // frozen or not enough slots
+                return false;
+            }
+        } while(!remaining.compareAndSet(current, current - slots));
+        return true;
+    }
 }
@@ -0,0 +1,624 @@
+package com.github.cap5lut.ratelimits;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keyed rate limit for unbounded key spaces (e.g. per IP address), using constant memory regardless of the amount of
+ * distinct keys.
+ * <p>
+ * The slots acquired per key and rate are counted by a Count-Min sketch of {@code depth} rows with {@code width}
+ * counters each, where {@code width = ceil(e / epsilon)} and {@code depth = ceil(ln(1 / delta))}. The estimated count
+ * of a key never underestimates its real count, and with a probability of at least {@code 1 - delta} overestimates it
+ * by at most {@code epsilon * N}, where {@code N} is the total amount of slots acquired in the current rate over all
+ * keys. Therefore a key is never granted more than the capacity per rate, but may be rejected earlier by that error.
+ * Counters are tagged with their rate ID and reset lazily, all updates are lock-free. As the rows are updated one by
+ * one, the estimate is read again after adding and the slots are rolled back if it exceeds the capacity: the last of
+ * concurrent acquirers of a key sees the slots of all others, so they cannot be granted together beyond the capacity.
+ * </p>
+ * <p>
+ * Keys using at least half of their capacity within a rate are promoted to a small exact tier of at most
+ * {@code heavyHitters} keys, which get real {@link RateLimit} instances sharing the rates of the sketch. Within the rate
+ * of its promotion, a key keeps being counted by the sketch, so no slot acquired before the promotion became visible is
+ * lost. When the tier is full, the key having used the fewest slots in the current rate is evicted in favor of a
+ * heavier one, similar to the Space-Saving algorithm.
+ * </p>
+ * @param <K> Key type.
+ */
+public class CountMinKeyedRateLimit<K> {
+    /**
+     * Mask of the count within a packed counter.
+     */
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Default relative error.
+     */
+    public static final double DEFAULT_EPSILON = 0.0001;
+
+    /**
+     * Default error probability.
+     */
+    public static final double DEFAULT_DELTA = 0.01;
+
+    /**
+     * Default amount of exactly tracked keys.
+     */
+    public static final int DEFAULT_HEAVY_HITTERS = 64;
+
+    /**
+     * Rate limit of an exactly tracked key, sharing the rates of the sketch.
+     */
+    private final class HeavyHitter implements RateLimit {
+        /**
+         * Key hash.
+         */
+        private final long hash;
+
+        /**
+         * Rate ID of the promotion, within this rate the key is counted by the sketch.
+         */
+        private final long promotedRateID;
+
+        /**
+         * Exact counter of the rates after the promotion, packed like the sketch counters.
+         */
+        private final AtomicLong counter;
+
+        /**
+         * Creates a new rate limit of an exactly tracked key.
+         * @param hash Key hash.
+         * @param promotedRateID Rate ID of the promotion.
+         */
+        private HeavyHitter(long hash, long promotedRateID) {
+            this.hash = hash;
+            this.promotedRateID = promotedRateID;
+            this.counter = new AtomicLong(promotedRateID << 32);
+        }
+
+        /**
+         * Gets the used slots of a rate.
+         * @param rateID Rate ID.
+         * @return Returns the used slots.
+         */
+        private long getUsed(long rateID) {
+            return rateID == promotedRateID ? estimate(hash, rateID) : count(counter.get(), rateID);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long acquireAndGetRateID() throws InterruptedException {
+            return acquireAndGetRateID(1);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long acquireAndGetRateID(long slots) throws InterruptedException {
+            long rateID;
+            while((rateID = tryAcquireAndGetRateID(slots)) < 0) {
+                if(Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                yielder.yield();
+            }
+            return rateID;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long tryAcquireAndGetRateID(long slots) {
+            if(slots < 1 || slots > capacity) {
+                throw new IllegalArgumentException("slots must be between 1 and the capacity");
+            }
+            long rateID = CountMinKeyedRateLimit.this.getCurrentRateID();
+            if(rateID == promotedRateID) {
+                return tryAdd(hash, rateID, slots) >= 0 ? rateID : -1;
+            }
+
+            long current;
+            long count;
+            do {
+                current = counter.get();
+                count = count(current, rateID) + slots;
+                if(count > capacity) {
+                    return -1;
+                }
+            } while(!counter.compareAndSet(current, rateID << 32 | count));
+            return rateID;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean cancel(long rateID) {
+            return cancel(rateID, 1);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean cancel(long rateID, long slots) {
+            if(rateID != CountMinKeyedRateLimit.this.getCurrentRateID()) {
+                return false;
+            }
+            if(rateID == promotedRateID) {
+                add(hash, rateID, -slots);
+                return true;
+            }
+
+            long current;
+            long count;
+            do {
+                current = counter.get();
+                count = count(current, rateID);
+                if(count < slots) { // the rate is over
+                    return false;
+                }
+            } while(!counter.compareAndSet(current, rateID << 32 | (count - slots)));
+            return true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getNextReset() {
+            return origin + (CountMinKeyedRateLimit.this.getCurrentRateID() + 1) * resetInterval;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getRemaining() {
+            return Math.max(0, capacity - getUsed(CountMinKeyedRateLimit.this.getCurrentRateID()));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getCurrentRateID() {
+            return CountMinKeyedRateLimit.this.getCurrentRateID();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getResetInterval() {
+            return resetInterval;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Ticker getTicker() {
+            return ticker;
+        }
+    }
+
+    /**
+     * Yielder.
+     */
+    private final RateLimit.Yielder yielder;
+
+    /**
+     * Time source.
+     */
+    private final RateLimit.Ticker ticker;
+
+    /**
+     * Rate limit capacity per key.
+     */
+    private final long capacity;
+
+    /**
+     * Rate limit reset interval in nano seconds.
+     */
+    private final long resetInterval;
+
+    /**
+     * Time stamp of the first rate in nano seconds.
+     */
+    private final long origin;
+
+    /**
+     * Counters per row.
+     */
+    private final int width;
+
+    /**
+     * Amount of rows.
+     */
+    private final int depth;
+
+    /**
+     * Sketch counters, row after row, each packed as the lower 32 bits of the rate ID followed by the count.
+     */
+    private final AtomicLongArray counters;
+
+    /**
+     * Maximum amount of exactly tracked keys.
+     */
+    private final int heavyHitters;
+
+    /**
+     * Rate limits of exactly tracked keys.
+     */
+    private final Map<K, HeavyHitter> heavyHitterLimits;
+
+    /**
+     * Lock for promotions and evictions of exactly tracked keys.
+     */
+    private final ReentrantLock promotionLock = new ReentrantLock();
+
+    /**
+     * Creates a new keyed rate limit with default error bounds.
+     * @param capacity Rate limit capacity per key.
+     * @param resetInterval Rate limit reset interval.
+     * @param resetUnit Rate limit reset interval unit.
+     */
+    public CountMinKeyedRateLimit(long capacity, long resetInterval, TimeUnit resetUnit) {
+        this(capacity, resetInterval, resetUnit, DEFAULT_EPSILON, DEFAULT_DELTA, DEFAULT_HEAVY_HITTERS,
+                RateLimit.defaultYielder);
+    }
+
+    /**
+     * Creates a new keyed rate limit.
+     * @param capacity Rate limit capacity per key.
+     * @param resetInterval Rate limit reset interval.
+     * @param resetUnit Rate limit reset interval unit.
+     * @param epsilon Relative error of the estimated counts.
+     * @param delta Probability of exceeding the relative error.
+     * @param heavyHitters Maximum amount of exactly tracked keys.
+     * @param yielder Yielder.
+     */
+    public CountMinKeyedRateLimit(long capacity, long resetInterval, TimeUnit resetUnit, double epsilon, double delta,
+            int heavyHitters, RateLimit.Yielder yielder) {
+        this(capacity, resetInterval, resetUnit, epsilon, delta, heavyHitters, yielder, RateLimit.systemTicker);
+    }
+
+    /**
+     * Creates a new keyed rate limit on a custom time source.
+     * @param capacity Rate limit capacity per key.
+     * @param resetInterval Rate limit reset interval.
+     * @param resetUnit Rate limit reset interval unit.
+     * @param epsilon Relative error of the estimated counts.
+     * @param delta Probability of exceeding the relative error.
+     * @param heavyHitters Maximum amount of exactly tracked keys.
+     * @param yielder Yielder.
+     * @param ticker Time source.
+     */
+    public CountMinKeyedRateLimit(long capacity, long resetInterval, TimeUnit resetUnit, double epsilon, double delta,
+            int heavyHitters, RateLimit.Yielder yielder, RateLimit.Ticker ticker) {
+        if(capacity < 1 || capacity > COUNT_MASK) {
+            throw new IllegalArgumentException("capacity must be between 1 and " + COUNT_MASK);
+        }
+        if(epsilon <= 0 || epsilon >= 1 || delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException("epsilon and delta must be between 0 and 1");
+        }
+        this.capacity = capacity;
+        this.resetInterval = resetUnit.toNanos(resetInterval);
+        this.ticker = ticker;
+        this.origin = ticker.nanoTime();
+        this.width = (int) Math.ceil(Math.E / epsilon);
+        this.depth = (int) Math.ceil(Math.log(1 / delta));
+        this.counters = new AtomicLongArray(Math.multiplyExact(width, depth));
+        this.heavyHitters = heavyHitters;
+        this.heavyHitterLimits = new ConcurrentHashMap<>(heavyHitters * 2);
+        this.yielder = yielder;
+    }
+
+    /**
+     * Tries to acquire a slot for the key without blocking.
+     * @param key Key.
+     * @return Returns {@code true} if the slot was acquired.
+     */
+    public boolean tryAcquire(K key) {
+        HeavyHitter heavyHitter;
+        long rateID;
+        long hash;
+        long estimate;
+        while(true) {
+            heavyHitter = heavyHitterLimits.get(key);
+            if(heavyHitter != null) {
+                rateID = heavyHitter.tryAcquireAndGetRateID(1);
+                if(rateID < 0) {
+                    return false;
+                }
+                if(heavyHitterLimits.get(key) == heavyHitter) {
+                    return true;
+                }
+                heavyHitter.cancel(rateID); // evicted in between, count in the sketch instead
+                continue;
+            }
+
+            rateID = getCurrentRateID();
+            hash = hash(key);
+            estimate = tryAdd(hash, rateID, 1);
+            if(estimate < 0) {
+                return false;
+            }
+            heavyHitter = heavyHitterLimits.get(key);
+            if(heavyHitter != null && heavyHitter.promotedRateID != rateID) {
+                add(hash, rateID, -1); // promoted in between, count exactly instead
+                continue;
+            }
+            if(heavyHitter == null && estimate >= (capacity + 1) / 2) {
+                promote(key, hash, rateID, estimate);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Acquires a slot for the key.
+     * NOTE: This method will block until the next slot is acquirable.
+     * @param key Key.
+     * @throws InterruptedException if the thread was interrupted while acquiring a slot.
+     */
+    public void acquire(K key) throws InterruptedException {
+        while(!tryAcquire(key)) {
+            if(Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            yielder.yield();
+        }
+    }
+
+    /**
+     * Estimates the acquired slots of the key in the current rate.
+     * @param key Key.
+     * @return Returns the estimated amount of acquired slots.
+     */
+    public long estimate(K key) {
+        HeavyHitter heavyHitter = heavyHitterLimits.get(key);
+        long rateID = getCurrentRateID();
+        return heavyHitter != null ? heavyHitter.getUsed(rateID) : estimate(hash(key), rateID);
+    }
+
+    /**
+     * Gets the rate limit of an exactly tracked key.
+     * @param key Key.
+     * @return Returns the rate limit or {@code null} if the key is not tracked exactly.
+     */
+    public RateLimit getHeavyHitter(K key) {
+        return heavyHitterLimits.get(key);
+    }
+
+    /**
+     * Gets the rate limit capacity per key.
+     * @return Returns the capacity.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the current rate id.
+     * @return Return the current rate id.
+     */
+    public long getCurrentRateID() {
+        return (ticker.nanoTime() - origin) / resetInterval;
+    }
+
+    /**
+     * Gets the reset interval in nano seconds.
+     * @return Returns the reset interval in nano seconds.
+     */
+    public long getResetInterval() {
+        return resetInterval;
+    }
+
+    /**
+     * Gets the amount of counters per sketch row.
+     * @return Returns the width of the sketch.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the amount of sketch rows.
+     * @return Returns the depth of the sketch.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Estimates the acquired slots of a key hash in a rate.
+     * @param hash Key hash.
+     * @param rateID Current rate ID.
+     * @return Returns the estimated amount of acquired slots.
+     */
+    private long estimate(long hash, long rateID) {
+        long estimate = Long.MAX_VALUE;
+        for(int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, count(counters.get(index(hash, row)), rateID));
+        }
+        return estimate;
+    }
+
+    /**
+     * Adds slots to the sketch counters of a key, unless its estimated count would exceed the capacity.
+     * @param hash Key hash.
+     * @param rateID Current rate ID.
+     * @param slots Slots to add.
+     * @return Returns the estimated count after adding, or {@code -1} if the slots were rolled back.
+     */
+    private long tryAdd(long hash, long rateID, long slots) {
+        if(add(hash, rateID, slots) <= capacity) {
+            long estimate = recheck(hash, rateID); // rows of concurrent acquirers may have been read before they added
+            if(estimate <= capacity) {
+                return estimate;
+            }
+        }
+        add(hash, rateID, -slots);
+        return -1;
+    }
+
+    /**
+     * Estimates the acquired slots of a key hash in a rate again after adding to it.
+     * @param hash Key hash.
+     * @param rateID Current rate ID.
+     * @return Returns the estimated amount of acquired slots, or {@link Long#MAX_VALUE} if the rate ID is outdated.
+     */
+    private long recheck(long hash, long rateID) {
+        long estimate = Long.MAX_VALUE;
+        long current;
+        for(int row = 0; row < depth; row++) {
+            current = counters.get(index(hash, row));
+            if((int) (current >>> 32) - (int) rateID > 0) { // rate ID is outdated
+                return Long.MAX_VALUE;
+            }
+            estimate = Math.min(estimate, count(current, rateID));
+        }
+        return estimate;
+    }
+
+    /**
+     * Adds slots to the sketch counters of a key.
+     * @param hash Key hash.
+     * @param rateID Current rate ID.
+     * @param slots Slots to add, may be negative.
+     * @return Returns the estimated count after adding, or {@link Long#MAX_VALUE} if the rate ID is outdated.
+     */
+    private long add(long hash, long rateID, long slots) {
+        long estimate = Long.MAX_VALUE;
+        boolean outdated = false;
+        int index;
+        long current;
+        long count;
+        for(int row = 0; row < depth; row++) {
+            index = index(hash, row);
+            do {
+                current = counters.get(index);
+                if((int) (current >>> 32) - (int) rateID > 0) { // rate ID is outdated
+                    count = 0;
+                    outdated = true;
+                    break;
+                }
+                count = count(current, rateID);
+                if(count == 0 && slots < 0) { // counter was reset in between
+                    break;
+                }
+                count = Math.max(0, count + slots);
+            } while(!counters.compareAndSet(index, current, rateID << 32 | Math.min(count, COUNT_MASK)));
+            estimate = Math.min(estimate, count);
+        }
+        return outdated ? Long.MAX_VALUE : estimate;
+    }
+
+    /**
+     * Promotes a key to the exactly tracked keys, if there is space or a lighter key can be evicted.
+     * @param key Key.
+     * @param hash Key hash.
+     * @param rateID Current rate ID.
+     * @param estimate Estimated count of the key.
+     */
+    private void promote(K key, long hash, long rateID, long estimate) {
+        if(!promotionLock.tryLock()) { // another promotion is in progress
+            return;
+        }
+        try {
+            if(heavyHitterLimits.containsKey(key)) {
+                return;
+            }
+            if(heavyHitterLimits.size() >= heavyHitters && !evictLighterThan(estimate)) {
+                return;
+            }
+
+            heavyHitterLimits.put(key, new HeavyHitter(hash, rateID));
+        } finally {
+            promotionLock.unlock();
+        }
+    }
+
+    /**
+     * Evicts the exactly tracked key having used the fewest slots in the current rate, if it used less than the given
+     * amount. Its usage is carried back into the sketch, unless it is still counted by the sketch.
+     * @param used Used slots of the key to promote.
+     * @return Returns {@code true} if a key was evicted.
+     */
+    private boolean evictLighterThan(long used) {
+        long rateID = getCurrentRateID();
+        K lightest = null;
+        long lightestUsed = used;
+        long keyUsed;
+        for(Map.Entry<K, HeavyHitter> entry: heavyHitterLimits.entrySet()) {
+            keyUsed = entry.getValue().getUsed(rateID);
+            if(keyUsed < lightestUsed) {
+                lightest = entry.getKey();
+                lightestUsed = keyUsed;
+            }
+        }
+        if(lightest == null) {
+            return false;
+        }
+
+        HeavyHitter evicted = heavyHitterLimits.remove(lightest);
+        lightestUsed = evicted.getUsed(rateID); // acquisitions after the removal move to the sketch by themselves
+        if(rateID != evicted.promotedRateID && lightestUsed > 0) {
+            add(evicted.hash, rateID, lightestUsed);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the count of a packed counter.
+     * @param counter Packed counter.
+     * @param rateID Current rate ID.
+     * @return Returns the count or {@code 0} if the counter is outdated.
+     */
+    private static long count(long counter, long rateID) {
+        return (int) (counter >>> 32) == (int) rateID ? counter & COUNT_MASK : 0;
+    }
+
+    /**
+     * Gets the counter index of a key hash in a row.
+     * @param hash Key hash.
+     * @param row Row.
+     * @return Returns the counter index.
+     */
+    private int index(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * width + ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+    }
+
+    /**
+     * Hashes a key.
+     * @param key Key.
+     * @return Returns the 64 bit hash.
+     */
+    private static long hash(Object key) {
+        long h = key.hashCode() * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 29;
+        return h;
+    }
+}
@@ -0,0 +1,669 @@
+package com.github.cap5lut.ratelimits;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free hierarchical {@link RateLimit} implementation.
+ * The rate limits form a tree sharing the reset interval of the root. Acquiring a slot from a node deducts the slot
+ * from the node and all its ancestors, so a node never grants more slots than any rate limit on its path to the root.
+ * <p>
+ * Like HTB traffic shaping, the capacity of a node is guaranteed: its parent keeps the unused capacity of all children
+ * reserved for them. Beyond its capacity a node may borrow up to its ceiling, but only from the slots of its parent
+ * that are not guaranteed to any child, which are also the only slots a parent grants to direct acquisitions. Hence the
+ * capacities of all children must not add up to more than the capacity of their parent.
+ * </p>
+ */
+public class HierarchicalRateLimit implements RateLimit {
+    /**
+     * Rate timing shared by the whole tree.
+     */
+    private static final class Window {
+        /**
+         * Time stamp of the base rate in nano seconds.
+         */
+        private final long origin;
+
+        /**
+         * Reset interval in nano seconds.
+         */
+        private final long resetInterval;
+
+        /**
+         * Rate ID of the rate starting at the origin.
+         */
+        private final long baseRateID;
+
+        /**
+         * Creates a new window.
+         * @param origin Time stamp of the base rate in nano seconds.
+         * @param resetInterval Reset interval in nano seconds.
+         * @param baseRateID Rate ID of the rate starting at the origin.
+         */
+        private Window(long origin, long resetInterval, long baseRateID) {
+            this.origin = origin;
+            this.resetInterval = resetInterval;
+            this.baseRateID = baseRateID;
+        }
+
+        /**
+         * Gets the rate ID of a time stamp.
+         * @param time Time stamp in nano seconds.
+         * @return Returns the rate ID.
+         */
+        private long getRateID(long time) {
+            return baseRateID + (time - origin) / resetInterval;
+        }
+
+        /**
+         * Gets the start of a rate.
+         * @param rateID Rate ID.
+         * @return Returns the time stamp in nano seconds the rate starts at.
+         */
+        private long getStart(long rateID) {
+            return origin + (rateID - baseRateID) * resetInterval;
+        }
+    }
+
+    /**
+     * Mask of the used slots within a packed state.
+     */
+    private static final long USED_MASK = 0xFFFFFFFFL;
+
+    /**
+     * Maximum capacity and ceiling of a node.
+     */
+    private static final long MAX_CEILING = USED_MASK;
+
+    /**
+     * Yielder.
+     */
+    private final Yielder yielder;
+
+    /**
+     * Time source, shared by the whole tree.
+     */
+    private final Ticker ticker;
+
+    /**
+     * Parent node or {@code null} for the root.
+     */
+    private final HierarchicalRateLimit parent;
+
+    /**
+     * Root node.
+     */
+    private final HierarchicalRateLimit root;
+
+    /**
+     * Rate limit capacity without borrowing.
+     */
+    private volatile long capacity;
+
+    /**
+     * Rate limit capacity including borrowed slots.
+     */
+    private volatile long ceiling;
+
+    /**
+     * Rate timing, only used by the root.
+     */
+    private volatile Window window;
+
+    /**
+     * Rate ID of the last reconfigured rate, in which released slots may exceed the used slots.
+     */
+    private volatile long reconfiguredRateID = -1;
+
+    /**
+     * Current state, packed as the lower 32 bits of the rate ID followed by the used slots of that rate.
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * Used slots not covered by the capacity of a child, which are slots borrowed by children and slots acquired from
+     * this node directly, packed like the state.
+     */
+    private final AtomicLong unguaranteed = new AtomicLong();
+
+    /**
+     * Sum of the capacities of all children, only changed while holding the lock of this node.
+     */
+    private final AtomicLong guaranteed = new AtomicLong();
+
+    /**
+     * Child nodes.
+     */
+    private final Set<HierarchicalRateLimit> children = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Whether the node was removed from the tree.
+     */
+    private volatile boolean removed;
+
+    /**
+     * Creates a new root rate limit with the default yielder.
+     * @param capacity Rate limit capacity.
+     * @param resetInterval Rate limit reset interval.
+     * @param resetUnit Rate limit reset interval unit.
+     */
+    public HierarchicalRateLimit(long capacity, long resetInterval, TimeUnit resetUnit) {
+        this(capacity, resetInterval, resetUnit, defaultYielder);
+    }
+
+    /**
+     * Creates a new root rate limit.
+     * @param capacity Rate limit capacity.
+     * @param resetInterval Rate limit reset interval.
+     * @param resetUnit Rate limit reset interval unit.
+     * @param yielder Yielder.
+     */
+    public HierarchicalRateLimit(long capacity, long resetInterval, TimeUnit resetUnit, Yielder yielder) {
+        this(capacity, resetInterval, resetUnit, yielder, systemTicker);
+    }
+
+    /**
+     * Creates a new root rate limit on a custom time source.
+     * @param capacity Rate limit capacity.
+     * @param resetInterval Rate limit reset interval.
+     * @param resetUnit Rate limit reset interval unit.
+     * @param yielder Yielder.
+     * @param ticker Time source.
+     */
+    public HierarchicalRateLimit(long capacity, long resetInterval, TimeUnit resetUnit, Yielder yielder,
+            Ticker ticker) {
+        checkLimits(capacity, capacity);
+        this.parent = null;
+        this.root = this;
+        this.capacity = capacity;
+        this.ceiling = capacity;
+        this.window = new Window(ticker.nanoTime(), resetUnit.toNanos(resetInterval), 0);
+        this.yielder = yielder;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Creates a new child rate limit.
+     * @param parent Parent node.
+     * @param capacity Rate limit capacity without borrowing.
+     * @param ceiling Rate limit capacity including borrowed slots.
+     */
+    private HierarchicalRateLimit(HierarchicalRateLimit parent, long capacity, long ceiling) {
+        checkLimits(capacity, ceiling);
+        this.parent = parent;
+        this.root = parent.root;
+        this.capacity = capacity;
+        this.ceiling = ceiling;
+        this.yielder = parent.yielder;
+        this.ticker = parent.ticker;
+    }
+
+    /**
+     * Checks the capacity and ceiling of a node.
+     * @param capacity Rate limit capacity without borrowing.
+     * @param ceiling Rate limit capacity including borrowed slots.
+     */
+    private static void checkLimits(long capacity, long ceiling) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("capacity must be greater than zero");
+        }
+        if(ceiling < capacity) {
+            throw new IllegalArgumentException("ceiling must not be lower than the capacity");
+        }
+        if(ceiling > MAX_CEILING) {
+            throw new IllegalArgumentException("ceiling must not be greater than " + MAX_CEILING);
+        }
+    }
+
+    /**
+     * Creates a child rate limit, which can not borrow slots from this rate limit.
+     * @param capacity Rate limit capacity.
+     * @return Returns the child rate limit.
+     * @throws IllegalArgumentException if the capacities of all children would exceed the capacity of this rate limit.
+     */
+    public HierarchicalRateLimit createChild(long capacity) {
+        return createChild(capacity, capacity);
+    }
+
+    /**
+     * Creates a child rate limit, which can borrow slots of this rate limit not guaranteed to other children up to the
+     * ceiling.
+     * @param capacity Rate limit capacity guaranteed by this rate limit.
+     * @param ceiling Rate limit capacity including borrowed slots.
+     * @return Returns the child rate limit.
+     * @throws IllegalArgumentException if the capacities of all children would exceed the capacity of this rate limit.
+     */
+    public synchronized HierarchicalRateLimit createChild(long capacity, long ceiling) {
+        checkNotRemoved(); // remove() marks the node while holding its lock
+        HierarchicalRateLimit child = new HierarchicalRateLimit(this, capacity, ceiling);
+        guarantee(capacity);
+        children.add(child);
+        return child;
+    }
+
+    /**
+     * Removes this rate limit and all its descendants from the tree.
+     * Acquiring slots from removed rate limits is not possible anymore.
+     */
+    public void remove() {
+        synchronized(this) { // serialized with reconfigure, which changes the capacity guaranteed by the parent
+            removed = true;
+            if(parent != null) {
+                synchronized(parent) {
+                    if(parent.children.remove(this)) {
+                        parent.guarantee(-capacity);
+                    }
+                }
+            }
+        }
+        for(HierarchicalRateLimit child: children) {
+            child.remove();
+        }
+    }
+
+    /**
+     * Checks if the rate limit was removed from the tree.
+     * @return Returns {@code true} if the rate limit was removed.
+     */
+    public boolean isRemoved() {
+        return removed;
+    }
+
+    /**
+     * Gets the parent rate limit.
+     * @return Returns the parent rate limit or {@code null} if this is the root.
+     */
+    public HierarchicalRateLimit getParent() {
+        return parent;
+    }
+
+    /**
+     * Gets the child rate limits.
+     * @return Returns an unmodifiable view of the child rate limits.
+     */
+    public Collection<HierarchicalRateLimit> getChildren() {
+        return Collections.unmodifiableSet(children);
+    }
+
+    /**
+     * Gets the rate limit capacity including borrowed slots.
+     * @return Returns the ceiling.
+     */
+    public long getCeiling() {
+        return ceiling;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long acquireAndGetRateID() throws InterruptedException {
+        return acquireAndGetRateID(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The slots must not exceed the ceiling of any rate limit on the path to the root.
+     */
+    @Override
+    public long acquireAndGetRateID(long slots) throws InterruptedException {
+        checkAcquirable(slots);
+        long rateID;
+        while(true) {
+            rateID = getCurrentRateID();
+            if(tryAcquire(rateID, slots)) {
+                return rateID;
+            }
+            if(Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            yielder.yield();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The slots must not exceed the ceiling of any rate limit on the path to the root.
+     */
+    @Override
+    public long tryAcquireAndGetRateID(long slots) {
+        checkAcquirable(slots);
+        long rateID = getCurrentRateID();
+        return tryAcquire(rateID, slots) ? rateID : -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel(long rateID) {
+        return cancel(rateID, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel(long rateID, long slots) {
+        if(getCurrentRateID() != rateID) {
+            return false;
+        }
+        long borrowed = release(rateID, slots, slots);
+        if(borrowed < 0) {
+            return false;
+        }
+        for(HierarchicalRateLimit node = parent; node != null; node = node.parent) {
+            borrowed = node.release(rateID, slots, borrowed);
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The ceiling is scaled proportionally to the capacity and the parent guarantees the new capacity. Only the root
+     * can change the reset interval of the tree, the current rate of the whole tree ends one new reset interval after
+     * it started.
+     * @throws IllegalArgumentException if a child should change the reset interval, if the capacity would be lower than
+     *         the capacities of all children or if the capacities of all siblings would exceed the parent capacity.
+     * @throws IllegalStateException if the rate limit was removed.
+     */
+    @Override
+    public synchronized void reconfigure(long capacity, long resetInterval, TimeUnit resetUnit) {
+        checkNotRemoved();
+        long interval = resetUnit.toNanos(resetInterval);
+        if(interval < 1) {
+            throw new IllegalArgumentException("reset interval must be greater than zero");
+        }
+        if(parent != null && interval != getResetInterval()) {
+            throw new IllegalArgumentException("only the root can change the reset interval");
+        }
+        long oldCapacity = this.capacity;
+        long newCeiling = Math.max(capacity, Math.round(ceiling * (capacity / (double) oldCapacity)));
+        newCeiling = Math.min(MAX_CEILING, newCeiling);
+        checkLimits(capacity, newCeiling);
+        if(capacity < guaranteed.get()) {
+            throw new IllegalArgumentException("capacity must not be lower than the capacities of all children");
+        }
+        if(parent != null) {
+            synchronized(parent) { // locks are always taken from the child to the parent
+                parent.guarantee(capacity - oldCapacity);
+            }
+        }
+
+        long rateID = getCurrentRateID();
+        if(parent == null && interval != window.resetInterval) {
+            window = new Window(window.getStart(rateID), interval, rateID);
+            rateID = getCurrentRateID();
+        }
+
+        reconfiguredRateID = rateID;
+        scale(state, rateID, capacity / (double) oldCapacity, newCeiling);
+        scale(unguaranteed, rateID, capacity / (double) oldCapacity, newCeiling);
+        this.ceiling = newCeiling;
+        this.capacity = capacity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCurrentRateID() {
+        return root.window.getRateID(ticker.nanoTime());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getNextReset() {
+        Window current = root.window;
+        return current.getStart(current.getRateID(ticker.nanoTime()) + 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The remaining slots exclude the unused capacity guaranteed to children, and are limited by the remaining
+     * guaranteed and borrowable slots of all ancestors.
+     */
+    @Override
+    public long getRemaining() {
+        long rateID = getCurrentRateID();
+        long remaining = Math.min(ceiling - getUsed(state, rateID), getBorrowable(rateID));
+        long covered;
+        HierarchicalRateLimit child = this;
+        for(HierarchicalRateLimit node = parent; node != null; child = node, node = node.parent) {
+            covered = Math.min(remaining, Math.max(0, child.capacity - getUsed(child.state, rateID)));
+            remaining = covered + Math.min(remaining - covered, node.getBorrowable(rateID));
+            remaining = Math.min(remaining, node.ceiling - getUsed(node.state, rateID));
+        }
+        return Math.max(0, remaining);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getResetInterval() {
+        return root.window.resetInterval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    /**
+     * Checks that the slots can be acquired from this rate limit.
+     * @param slots Amount of slots.
+     */
+    private void checkAcquirable(long slots) {
+        checkNotRemoved();
+        for(HierarchicalRateLimit node = this; node != null; node = node.parent) {
+            if(slots < 1 || slots > node.ceiling) {
+                throw new IllegalArgumentException("slots must be between 1 and the ceiling of all ancestors");
+            }
+        }
+    }
+
+    /**
+     * Guarantees capacity of this node to a child.
+     * Must be called while holding the lock of this node.
+     * @param capacity Capacity to guarantee in addition, negative to release guaranteed capacity.
+     */
+    private void guarantee(long capacity) {
+        if(guaranteed.get() + capacity > this.capacity) {
+            throw new IllegalArgumentException("capacities of all children must not exceed the capacity");
+        }
+        guaranteed.addAndGet(capacity);
+    }
+
+    /**
+     * Checks that the rate limit was not removed from the tree.
+     */
+    private void checkNotRemoved() {
+        if(removed) {
+            throw new IllegalStateException("rate limit was removed");
+        }
+    }
+
+    /**
+     * Tries to acquire slots from this node and all its ancestors.
+     * Slots taken from nodes along the path are returned if any node is exhausted.
+     * @param rateID Rate ID to acquire the slots from.
+     * @param slots Amount of slots.
+     * @return Returns {@code true} if the slots were acquired.
+     */
+    private boolean tryAcquire(long rateID, long slots) {
+        long borrowed = slots; // direct acquisitions are not covered by any child
+        for(HierarchicalRateLimit node = this; node != null; node = node.parent) {
+            borrowed = node.tryClaim(rateID, slots, borrowed);
+            if(borrowed < 0) {
+                borrowed = slots;
+                for(HierarchicalRateLimit claimed = this; claimed != node; claimed = claimed.parent) {
+                    borrowed = claimed.release(rateID, slots, borrowed);
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tries to claim slots from this node only.
+     * @param rateID Rate ID to claim the slots from.
+     * @param slots Amount of slots.
+     * @param borrowed Amount of the slots not covered by the capacity of the child they are acquired through.
+     * @return Returns the amount of the slots exceeding the capacity of this node, which are borrowed from the parent,
+     *         or {@code -1} if the slots were not claimed.
+     */
+    private long tryClaim(long rateID, long slots, long borrowed) {
+        long used = claim(state, rateID, slots, ceiling);
+        if(used < 0) {
+            return -1;
+        }
+        if(borrowed > 0 && claim(unguaranteed, rateID, borrowed, ceiling - guaranteed.get()) < 0) {
+            unclaim(state, rateID, slots, true);
+            return -1;
+        }
+        return Math.min(slots, Math.max(0, used + slots - capacity));
+    }
+
+    /**
+     * Releases claimed slots of this node only.
+     * Slots are released from the top, so slots exceeding the capacity are released first.
+     * @param rateID Rate ID the slots were claimed from.
+     * @param slots Amount of slots.
+     * @param borrowed Amount of the slots not covered by the capacity of the child they are released through.
+     * @return Returns the amount of the slots that exceeded the capacity of this node, or {@code -1} if the rate is
+     *         over.
+     */
+    private long release(long rateID, long slots, long borrowed) {
+        long used = unclaim(state, rateID, slots, reconfiguredRateID == rateID);
+        if(used < 0) {
+            return -1;
+        }
+        if(borrowed > 0) {
+            unclaim(unguaranteed, rateID, borrowed, true); // may drift from the capacity after a reconfiguration
+        }
+        return Math.min(slots, Math.max(0, used - capacity));
+    }
+
+    /**
+     * Gets the slots of this node only, which are neither used nor guaranteed to a child.
+     * @param rateID Rate ID.
+     * @return Returns the borrowable slots.
+     */
+    private long getBorrowable(long rateID) {
+        return Math.max(0, ceiling - guaranteed.get() - getUsed(unguaranteed, rateID));
+    }
+
+    /**
+     * Claims slots from a packed counter.
+     * @param counter Packed counter.
+     * @param rateID Rate ID to claim the slots from.
+     * @param slots Amount of slots.
+     * @param limit Maximum value of the counter.
+     * @return Returns the counter value before the claim, or {@code -1} if the slots were not claimed.
+     */
+    private static long claim(AtomicLong counter, long rateID, long slots, long limit) {
+        long current;
+        long used;
+        do {
+            current = counter.get();
+            int currentRateID = (int) (current >>> 32);
+            if(currentRateID == (int) rateID) {
+                used = current & USED_MASK;
+            }
+            else if(currentRateID - (int) rateID > 0) { // rate ID is outdated
+                return -1;
+            }
+            else { // counter is outdated
+                used = 0;
+            }
+
+            if(used + slots > limit) {
+                return -1;
+            }
+        } while(!counter.compareAndSet(current, pack(rateID, used + slots)));
+        return used;
+    }
+
+    /**
+     * Releases claimed slots from a packed counter.
+     * @param counter Packed counter.
+     * @param rateID Rate ID the slots were claimed from.
+     * @param slots Amount of slots.
+     * @param clamp Whether the counter may hold less than the slots, otherwise this is an error.
+     * @return Returns the counter value before the release, or {@code -1} if the rate is over.
+     */
+    private static long unclaim(AtomicLong counter, long rateID, long slots, boolean clamp) {
+        long current;
+        long used;
+        do {
+            current = counter.get();
+            if((int) (current >>> 32) != (int) rateID) {
+                return -1;
+            }
+            used = current & USED_MASK;
+            if(used < slots && !clamp) {
+                throw new IllegalStateException("used slots must not become lower than zero");
+            }
+        } while(!counter.compareAndSet(current, current - Math.min(used, slots)));
+        return used;
+    }
+
+    /**
+     * Scales a packed counter of the current rate.
+     * @param counter Packed counter.
+     * @param rateID Current rate ID.
+     * @param factor Scaling factor.
+     * @param limit Maximum value of the counter.
+     */
+    private static void scale(AtomicLong counter, long rateID, double factor, long limit) {
+        long current;
+        long used;
+        do {
+            current = counter.get();
+            if((int) (current >>> 32) != (int) rateID) {
+                return;
+            }
+            used = Math.min(limit, (long) Math.ceil((current & USED_MASK) * factor));
+        } while(!counter.compareAndSet(current, pack(rateID, used)));
+    }
+
+    /**
+     * Gets the value of a packed counter.
+     * @param counter Packed counter.
+     * @param rateID Rate ID.
+     * @return Returns the used slots of the rate.
+     */
+    private static long getUsed(AtomicLong counter, long rateID) {
+        long current = counter.get();
+        return (int) (current >>> 32) == (int) rateID ? current & USED_MASK : 0;
+    }
+
+    /**
+     * Packs a state.
+     * @param rateID Rate ID.
+     * @param used Used slots.
+     * @return Returns the packed state.
+     */
+    private static long pack(long rateID, long used) {
+        return rateID << 32 | used;
+    }
+}
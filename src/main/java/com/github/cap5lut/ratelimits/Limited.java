@@ -0,0 +1,22 @@
+package com.github.cap5lut.ratelimits;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the rate limits of an interface method for {@link RateLimitedProxy}.
+ * If an interface is annotated, the rate limits apply to all of its methods in addition to the method's own rate limits.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Limited {
+    /**
+     * Names of the rate limits, as bound by {@link RateLimitedProxy.Builder#bind(String, RateLimit)}.
+     * @return Returns the rate limit names.
+     */
+    String[] value();
+}
@@ -0,0 +1,429 @@
+package com.github.cap5lut.ratelimits;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link RateLimit} decorator queueing blocked acquirers in arrival order and shedding load when the queue gets too
+ * long, so waiting times stay predictable when the demand exceeds the rate.
+ * <p>
+ * An acquirer is admitted to the queue if the queue holds less than {@code maxWaiters} waiters and its expected wait
+ * does not exceed {@code maxWait}. The expected wait is derived from {@link RateLimit#getNextReset()}, the capacity and
+ * the slots queued ahead. Otherwise the {@link OverloadPolicy} decides whether the new acquirer or the oldest waiters
+ * are rejected. Rejected acquirers get a {@link RejectedExecutionException}.
+ * </p>
+ */
+public class LoadSheddingRateLimit implements RateLimit {
+    /**
+     * Policy deciding which acquirers are rejected when the queue is full.
+     */
+    public enum OverloadPolicy {
+        /**
+         * Rejects the new acquirer immediately.
+         */
+        REJECT,
+
+        /**
+         * Rejects the oldest waiters until the new acquirer can be admitted.
+         */
+        DROP_OLDEST
+    }
+
+    /**
+     * Waiter is waiting for its slots.
+     */
+    private static final int WAITING = 0;
+
+    /**
+     * Waiter acquired its slots.
+     */
+    private static final int GRANTED = 1;
+
+    /**
+     * Waiter was dropped from the queue.
+     */
+    private static final int DROPPED = 2;
+
+    /**
+     * Waiter was interrupted.
+     */
+    private static final int CANCELLED = 3;
+
+    /**
+     * Queued acquirer.
+     */
+    private static final class Waiter extends AtomicInteger {
+        /**
+         * Serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Amount of slots to acquire.
+         */
+        private final long slots;
+
+        /**
+         * Creates a new waiter.
+         * @param slots Amount of slots to acquire.
+         */
+        private Waiter(long slots) {
+            super(WAITING);
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * Decorated rate limit.
+     */
+    private final RateLimit rateLimit;
+
+    /**
+     * Maximum amount of waiters.
+     */
+    private final int maxWaiters;
+
+    /**
+     * Maximum expected wait in nano seconds.
+     */
+    private final long maxWait;
+
+    /**
+     * Overload policy.
+     */
+    private final OverloadPolicy policy;
+
+    /**
+     * Yielder.
+     */
+    private final Yielder yielder;
+
+    /**
+     * Waiters in arrival order.
+     */
+    private final Deque<Waiter> queue = new ConcurrentLinkedDeque<>();
+
+    /**
+     * Amount of waiters.
+     */
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    /**
+     * Slots requested by all waiters.
+     */
+    private final AtomicLong queuedSlots = new AtomicLong();
+
+    /**
+     * Amount of acquirers rejected on arrival.
+     */
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Amount of waiters dropped from the queue.
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Creates a new load shedding rate limit with the default yielder.
+     * @param rateLimit Rate limit to decorate.
+     * @param maxWaiters Maximum amount of waiters.
+     * @param maxWait Maximum expected wait.
+     * @param unit Maximum expected wait unit.
+     * @param policy Overload policy.
+     */
+    public LoadSheddingRateLimit(RateLimit rateLimit, int maxWaiters, long maxWait, TimeUnit unit,
+            OverloadPolicy policy) {
+        this(rateLimit, maxWaiters, maxWait, unit, policy, defaultYielder);
+    }
+
+    /**
+     * Creates a new load shedding rate limit.
+     * @param rateLimit Rate limit to decorate.
+     * @param maxWaiters Maximum amount of waiters.
+     * @param maxWait Maximum expected wait.
+     * @param unit Maximum expected wait unit.
+     * @param policy Overload policy.
+     * @param yielder Yielder.
+     */
+    public LoadSheddingRateLimit(RateLimit rateLimit, int maxWaiters, long maxWait, TimeUnit unit,
+            OverloadPolicy policy, Yielder yielder) {
+        if(maxWaiters < 0 || maxWait < 0) {
+            throw new IllegalArgumentException("maximum waiters and wait must not be negative");
+        }
+        this.rateLimit = rateLimit;
+        this.maxWaiters = maxWaiters;
+        this.maxWait = unit.toNanos(maxWait);
+        this.policy = policy;
+        this.yielder = yielder;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws RejectedExecutionException if the acquirer was rejected.
+     */
+    @Override
+    public long acquireAndGetRateID() throws InterruptedException {
+        return acquireAndGetRateID(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Slots are granted in arrival order.
+     * @throws RejectedExecutionException if the acquirer was rejected.
+     * @throws IllegalArgumentException if the slots are less than one or greater than the capacity.
+     */
+    @Override
+    public long acquireAndGetRateID(long slots) throws InterruptedException {
+        if(slots < 1 || slots > rateLimit.getCapacity()) {
+            throw new IllegalArgumentException("slots must be between 1 and the capacity");
+        }
+        long rateID;
+        if(waiters.get() == 0) { // nobody to overtake
+            rateID = rateLimit.tryAcquireAndGetRateID(slots);
+            if(rateID >= 0) {
+                return rateID;
+            }
+        }
+
+        Waiter waiter = enqueue(slots);
+        while(true) {
+            if(waiter.get() == DROPPED) {
+                throw new RejectedExecutionException("dropped from the queue");
+            }
+            if(queue.peekFirst() == waiter) {
+                try {
+                    rateID = rateLimit.tryAcquireAndGetRateID(slots);
+                }
+                catch(RuntimeException e) { // e.g. the capacity shrank since the waiter was queued
+                    leave(waiter, CANCELLED);
+                    throw e;
+                }
+                if(rateID >= 0) {
+                    if(!leave(waiter, GRANTED)) { // dropped concurrently
+                        rateLimit.cancel(rateID, slots);
+                        throw new RejectedExecutionException("dropped from the queue");
+                    }
+                    return rateID;
+                }
+            }
+            if(Thread.interrupted()) {
+                if(!leave(waiter, CANCELLED)) {
+                    throw new RejectedExecutionException("dropped from the queue");
+                }
+                throw new InterruptedException();
+            }
+            yielder.yield();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Fails while acquirers are queued.
+     */
+    @Override
+    public long tryAcquireAndGetRateID(long slots) {
+        return waiters.get() == 0 ? rateLimit.tryAcquireAndGetRateID(slots) : -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel(long rateID) {
+        return rateLimit.cancel(rateID);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel(long rateID, long slots) {
+        return rateLimit.cancel(rateID, slots);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Reservation reserve(long slots) {
+        return rateLimit.reserve(slots);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reconfigure(long capacity, long resetInterval, TimeUnit resetUnit) {
+        rateLimit.reconfigure(capacity, resetInterval, resetUnit);
+    }
+
+    /**
+     * Gets the amount of waiters.
+     * @return Returns the queue depth.
+     */
+    public int getQueueDepth() {
+        return waiters.get();
+    }
+
+    /**
+     * Gets the slots requested by all waiters.
+     * @return Returns the queued slots.
+     */
+    public long getQueuedSlots() {
+        return queuedSlots.get();
+    }
+
+    /**
+     * Gets the expected wait of an acquirer arriving now.
+     * @param slots Amount of slots to acquire.
+     * @return Returns the expected wait in nano seconds.
+     */
+    public long getExpectedWait(long slots) {
+        return estimateWait(queuedSlots.get() + slots);
+    }
+
+    /**
+     * Gets the amount of acquirers rejected on arrival.
+     * @return Returns the amount of rejected acquirers.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Gets the amount of waiters dropped from the queue.
+     * @return Returns the amount of dropped waiters.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Gets the decorated rate limit.
+     * @return Returns the decorated rate limit.
+     */
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCapacity() {
+        return rateLimit.getCapacity();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getNextReset() {
+        return rateLimit.getNextReset();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRemaining() {
+        return rateLimit.getRemaining();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCurrentRateID() {
+        return rateLimit.getCurrentRateID();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getResetInterval() {
+        return rateLimit.getResetInterval();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Ticker getTicker() {
+        return rateLimit.getTicker();
+    }
+
+    /**
+     * Admits an acquirer to the queue, rejecting it or dropping the oldest waiters if the queue is full.
+     * The waiter is queued before it is counted, so a counted waiter can always be found in the queue.
+     * @param slots Amount of slots to acquire.
+     * @return Returns the queued waiter.
+     * @throws RejectedExecutionException if the acquirer was rejected.
+     */
+    private Waiter enqueue(long slots) {
+        Waiter waiter = new Waiter(slots);
+        queue.addLast(waiter);
+        int depth = waiters.incrementAndGet();
+        long queued = queuedSlots.addAndGet(slots);
+        Waiter oldest;
+        while(depth > maxWaiters || estimateWait(queued) > maxWait) {
+            oldest = policy == OverloadPolicy.DROP_OLDEST ? queue.peekFirst() : waiter;
+            if(oldest == waiter || oldest == null) {
+                if(!leave(waiter, CANCELLED)) {
+                    throw new RejectedExecutionException("dropped from the queue");
+                }
+                rejected.increment();
+                throw new RejectedExecutionException("queue is full");
+            }
+            if(oldest.compareAndSet(WAITING, DROPPED)) {
+                queue.remove(oldest);
+                depth = waiters.decrementAndGet();
+                queued = queuedSlots.addAndGet(-oldest.slots);
+                dropped.increment();
+            }
+            else { // left concurrently
+                queue.remove(oldest);
+                depth = waiters.get();
+                queued = queuedSlots.get();
+            }
+        }
+        return waiter;
+    }
+
+    /**
+     * Removes a waiter from the queue.
+     * @param waiter Waiter.
+     * @param state Leaving state.
+     * @return Returns {@code false} if the waiter was dropped before.
+     */
+    private boolean leave(Waiter waiter, int state) {
+        if(!waiter.compareAndSet(WAITING, state)) {
+            return false;
+        }
+        queue.remove(waiter);
+        waiters.decrementAndGet();
+        queuedSlots.addAndGet(-waiter.slots);
+        return true;
+    }
+
+    /**
+     * Estimates the wait until all queued slots can be acquired.
+     * @param queued Queued slots.
+     * @return Returns the expected wait in nano seconds.
+     */
+    private long estimateWait(long queued) {
+        long remaining = rateLimit.getRemaining();
+        if(queued <= remaining) {
+            return 0;
+        }
+        long rates = (queued - remaining - 1) / rateLimit.getCapacity();
+        return Math.max(0, rateLimit.getNextReset() - rateLimit.getTicker().nanoTime())
+                + rates * rateLimit.getResetInterval();
+    }
+}
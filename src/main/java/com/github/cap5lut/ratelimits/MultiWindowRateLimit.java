@@ -0,0 +1,534 @@
+package com.github.cap5lut.ratelimits;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free {@link RateLimit} implementation enforcing several windows at once, e.g. 5 per second and 100 per minute
+ * and 5000 per day.
+ * <p>
+ * The used slots of all windows and the rate ID of the shortest window are packed into a single {@code long}, so all
+ * windows are checked and updated by a single compare-and-set. Every reset interval must be a multiple of the shortest
+ * one, so the rates of all windows can be derived from the packed rate ID. Each window needs as many bits as its
+ * capacity, and at least {@value #MIN_TAG_BITS} bits must be left for the rate ID. The full rate ID of the latest
+ * update is kept aside, so the packed rate ID is restored exactly regardless of how long the rate limit was idle.
+ * </p>
+ * <p>
+ * {@link #getRemaining()}, {@link #getNextReset()}, {@link #getCapacity()} and {@link #getResetInterval()} report the
+ * binding window, which is the window having the fewest remaining slots and, among equally exhausted windows, the
+ * latest reset. Rate IDs are those of the shortest window.
+ * </p>
+ */
+public class MultiWindowRateLimit implements RateLimit {
+    /**
+     * Minimum amount of bits for the packed rate ID.
+     */
+    public static final int MIN_TAG_BITS = 16;
+
+    /**
+     * Multi window rate limit builder.
+     */
+    public static final class Builder {
+        /**
+         * Window capacities.
+         */
+        private final List<Long> capacities = new ArrayList<>();
+
+        /**
+         * Window reset intervals in nano seconds.
+         */
+        private final List<Long> resetIntervals = new ArrayList<>();
+
+        /**
+         * Yielder.
+         */
+        private Yielder yielder = defaultYielder;
+
+        /**
+         * Time source.
+         */
+        private Ticker ticker = systemTicker;
+
+        /**
+         * Creates a new builder.
+         */
+        private Builder() {
+        }
+
+        /**
+         * Adds a window.
+         * @param capacity Window capacity.
+         * @param resetInterval Window reset interval.
+         * @param resetUnit Window reset interval unit.
+         * @return Returns itself for method chaining.
+         */
+        public Builder window(long capacity, long resetInterval, TimeUnit resetUnit) {
+            capacities.add(capacity);
+            resetIntervals.add(resetUnit.toNanos(resetInterval));
+            return this;
+        }
+
+        /**
+         * Sets the yielder.
+         * @param yielder Yielder.
+         * @return Returns itself for method chaining.
+         */
+        public Builder yielder(Yielder yielder) {
+            this.yielder = yielder;
+            return this;
+        }
+
+        /**
+         * Sets the time source.
+         * @param ticker Time source.
+         * @return Returns itself for method chaining.
+         */
+        public Builder ticker(Ticker ticker) {
+            this.ticker = ticker;
+            return this;
+        }
+
+        /**
+         * Builds the rate limit.
+         * @return Returns the rate limit.
+         */
+        public MultiWindowRateLimit build() {
+            long[] capacities = new long[this.capacities.size()];
+            long[] resetIntervals = new long[capacities.length];
+            for(int i = 0; i < capacities.length; i++) {
+                capacities[i] = this.capacities.get(i);
+                resetIntervals[i] = this.resetIntervals.get(i);
+            }
+            return new MultiWindowRateLimit(capacities, resetIntervals, yielder, ticker);
+        }
+    }
+
+    /**
+     * Yielder.
+     */
+    private final Yielder yielder;
+
+    /**
+     * Time source.
+     */
+    private final Ticker ticker;
+
+    /**
+     * Window capacities, ordered by reset interval.
+     */
+    private final long[] capacities;
+
+    /**
+     * Window reset intervals in nano seconds, ordered ascending.
+     */
+    private final long[] resetIntervals;
+
+    /**
+     * Window reset intervals in multiples of the shortest reset interval.
+     */
+    private final long[] ratios;
+
+    /**
+     * Bit offsets of the used slots of each window within the packed state.
+     */
+    private final int[] shifts;
+
+    /**
+     * Masks of the used slots of each window, after shifting.
+     */
+    private final long[] masks;
+
+    /**
+     * Bit offset of the rate ID within the packed state.
+     */
+    private final int tagShift;
+
+    /**
+     * Mask of the rate ID, after shifting.
+     */
+    private final long tagMask;
+
+    /**
+     * Maximum amount of slots acquirable at once.
+     */
+    private final long maxSlots;
+
+    /**
+     * Time stamp of the first rate in nano seconds.
+     */
+    private final long origin;
+
+    /**
+     * Current state, packed as the lower bits of the rate ID of the shortest window followed by the used slots of each
+     * window, shortest window in the lowest bits.
+     */
+    private final AtomicLong state;
+
+    /**
+     * Full rate ID of the latest completed update of the state.
+     */
+    private final AtomicLong updatedRateID = new AtomicLong();
+
+    /**
+     * Creates a new single window rate limit with the default yielder.
+     * @param capacity Rate limit capacity.
+     * @param resetInterval Rate limit reset interval.
+     * @param resetUnit Rate limit reset interval unit.
+     */
+    public MultiWindowRateLimit(long capacity, long resetInterval, TimeUnit resetUnit) {
+        this(new long[] {capacity}, new long[] {resetUnit.toNanos(resetInterval)}, defaultYielder, systemTicker);
+    }
+
+    /**
+     * Creates a new multi window rate limit.
+     * @param capacities Window capacities.
+     * @param resetIntervals Window reset intervals in nano seconds.
+     * @param yielder Yielder.
+     * @param ticker Time source.
+     */
+    private MultiWindowRateLimit(long[] capacities, long[] resetIntervals, Yielder yielder, Ticker ticker) {
+        if(capacities.length == 0) {
+            throw new IllegalArgumentException("at least one window is required");
+        }
+        sort(capacities, resetIntervals);
+        this.capacities = capacities;
+        this.resetIntervals = resetIntervals;
+        this.ratios = new long[capacities.length];
+        this.shifts = new int[capacities.length];
+        this.masks = new long[capacities.length];
+
+        int shift = 0;
+        long maxSlots = Long.MAX_VALUE;
+        for(int i = 0; i < capacities.length; i++) {
+            if(capacities[i] < 1 || resetIntervals[i] < 1) {
+                throw new IllegalArgumentException("capacities and reset intervals must be greater than zero");
+            }
+            if(resetIntervals[i] % resetIntervals[0] != 0) {
+                throw new IllegalArgumentException("reset intervals must be multiples of the shortest reset interval");
+            }
+            ratios[i] = resetIntervals[i] / resetIntervals[0];
+            shifts[i] = shift;
+            masks[i] = Long.highestOneBit(capacities[i]) * 2 - 1;
+            shift += Long.SIZE - Long.numberOfLeadingZeros(capacities[i]);
+            maxSlots = Math.min(maxSlots, capacities[i]);
+        }
+        if(Long.SIZE - shift < MIN_TAG_BITS) {
+            throw new IllegalArgumentException("capacities need more than " + (Long.SIZE - MIN_TAG_BITS) + " bits");
+        }
+        this.tagShift = shift;
+        this.tagMask = -1L >>> shift;
+        this.maxSlots = maxSlots;
+        this.yielder = yielder;
+        this.ticker = ticker;
+        this.origin = ticker.nanoTime();
+        this.state = new AtomicLong();
+    }
+
+    /**
+     * Creates a new builder.
+     * @return Returns the builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long acquireAndGetRateID() throws InterruptedException {
+        return acquireAndGetRateID(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The slots must not exceed the capacity of any window.
+     */
+    @Override
+    public long acquireAndGetRateID(long slots) throws InterruptedException {
+        checkSlots(slots);
+        long rateID;
+        while(true) {
+            rateID = tryAcquire(slots);
+            if(rateID >= 0) {
+                return rateID;
+            }
+            if(Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            yielder.yield();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * The slots must not exceed the capacity of any window.
+     */
+    @Override
+    public long tryAcquireAndGetRateID(long slots) {
+        checkSlots(slots);
+        return tryAcquire(slots);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel(long rateID) {
+        return cancel(rateID, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The slots are returned to every window which is still in the rate the slots were acquired from.
+     * @return Returns {@code true} if the slots were returned to at least one window.
+     */
+    @Override
+    public boolean cancel(long rateID, long slots) {
+        long current;
+        long next;
+        do {
+            current = state.get();
+            if(getLastRateID(current, getCurrentRateID()) != rateID) { // shortest window was reset already
+                return cancelLongerWindows(rateID, slots);
+            }
+            next = current;
+            for(int i = 0; i < capacities.length; i++) {
+                if(getUsed(current, i) < slots) {
+                    throw new IllegalStateException("used slots must not become lower than zero");
+                }
+                next -= slots << shifts[i];
+            }
+        } while(!state.compareAndSet(current, next));
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCapacity() {
+        return capacities[getBindingWindow()];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getNextReset() {
+        return getNextReset(getBindingWindow(), getCurrentRateID());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRemaining() {
+        long current = state.get();
+        long rateID = getCurrentRateID();
+        long lastRateID = getLastRateID(current, rateID);
+        long remaining = Long.MAX_VALUE;
+        for(int i = 0; i < capacities.length; i++) {
+            remaining = Math.min(remaining, capacities[i] - getUsed(current, i, lastRateID, rateID));
+        }
+        return remaining;
+    }
+
+    /**
+     * {@inheritDoc}
+     * This is the rate ID of the shortest window.
+     */
+    @Override
+    public long getCurrentRateID() {
+        return (ticker.nanoTime() - origin) / resetIntervals[0];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getResetInterval() {
+        return resetIntervals[getBindingWindow()];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    /**
+     * Gets the amount of windows.
+     * @return Returns the amount of windows.
+     */
+    public int getWindowCount() {
+        return capacities.length;
+    }
+
+    /**
+     * Gets the index of the binding window, windows are ordered by their reset interval.
+     * @return Returns the index of the window having the fewest remaining slots.
+     */
+    public int getBindingWindow() {
+        long current = state.get();
+        long rateID = getCurrentRateID();
+        long lastRateID = getLastRateID(current, rateID);
+        int binding = 0;
+        long bindingRemaining = Long.MAX_VALUE;
+        long remaining;
+        for(int i = 0; i < capacities.length; i++) {
+            remaining = capacities[i] - getUsed(current, i, lastRateID, rateID);
+            if(remaining < bindingRemaining || remaining == 0) { // longer exhausted windows reset later
+                binding = i;
+                bindingRemaining = remaining;
+            }
+        }
+        return binding;
+    }
+
+    /**
+     * Tries to acquire slots from all windows.
+     * @param slots Amount of slots.
+     * @return Returns the rate ID or {@code -1} if any window has not enough remaining slots.
+     */
+    private long tryAcquire(long slots) {
+        long current;
+        long next;
+        long rateID;
+        long lastRateID;
+        long used;
+        do {
+            current = state.get();
+            rateID = getCurrentRateID(); // taken after the state, so the state is never of a later rate
+            lastRateID = getLastRateID(current, rateID);
+            next = (rateID & tagMask) << tagShift;
+            for(int i = 0; i < capacities.length; i++) {
+                used = getUsed(current, i, lastRateID, rateID);
+                if(used + slots > capacities[i]) {
+                    return -1;
+                }
+                next |= (used + slots) << shifts[i];
+            }
+        } while(!state.compareAndSet(current, next));
+
+        long updated;
+        do {
+            updated = updatedRateID.get();
+        } while(updated < rateID && !updatedRateID.compareAndSet(updated, rateID));
+        return rateID;
+    }
+
+    /**
+     * Returns slots to the windows longer than the shortest window, which are still in the rate the slots were
+     * acquired from.
+     * @param rateID Rate ID the slots were acquired from.
+     * @param slots Amount of slots.
+     * @return Returns {@code true} if the slots were returned to at least one window.
+     */
+    private boolean cancelLongerWindows(long rateID, long slots) {
+        long current;
+        long next;
+        long lastRateID;
+        boolean released;
+        do {
+            current = state.get();
+            lastRateID = getLastRateID(current, getCurrentRateID());
+            next = current;
+            released = false;
+            for(int i = 1; i < capacities.length; i++) {
+                if(lastRateID / ratios[i] != rateID / ratios[i]) {
+                    continue;
+                }
+                if(getUsed(current, i) < slots) {
+                    throw new IllegalStateException("used slots must not become lower than zero");
+                }
+                next -= slots << shifts[i];
+                released = true;
+            }
+        } while(released && !state.compareAndSet(current, next));
+        return released;
+    }
+
+    /**
+     * Gets the next reset of a window.
+     * @param window Window index.
+     * @param rateID Current rate ID.
+     * @return Returns the next reset time stamp in nano seconds.
+     */
+    private long getNextReset(int window, long rateID) {
+        return origin + (rateID / ratios[window] + 1) * resetIntervals[window];
+    }
+
+    /**
+     * Restores the full rate ID of the last update from the packed rate ID.
+     * If the latest completed update wrote the packed rate ID, its full rate ID is known. Otherwise an update is still
+     * completing, which happened at most a few rates ago, so the packed rate ID is the latest one not after the
+     * current rate ID.
+     * @param current Packed state.
+     * @param rateID Current rate ID, taken after reading the state.
+     * @return Returns the rate ID of the last update.
+     */
+    private long getLastRateID(long current, long rateID) {
+        long tag = current >>> tagShift;
+        long updated = updatedRateID.get();
+        if(updated <= rateID && (updated & tagMask) == tag) {
+            return updated;
+        }
+        return rateID - ((rateID - tag) & tagMask);
+    }
+
+    /**
+     * Gets the used slots of a window in the current rate.
+     * @param current Packed state.
+     * @param window Window index.
+     * @param lastRateID Rate ID of the last update.
+     * @param rateID Current rate ID.
+     * @return Returns the used slots.
+     */
+    private long getUsed(long current, int window, long lastRateID, long rateID) {
+        return rateID / ratios[window] == lastRateID / ratios[window] ? getUsed(current, window) : 0;
+    }
+
+    /**
+     * Gets the used slots of a window as packed.
+     * @param current Packed state.
+     * @param window Window index.
+     * @return Returns the packed used slots.
+     */
+    private long getUsed(long current, int window) {
+        return current >>> shifts[window] & masks[window];
+    }
+
+    /**
+     * Checks the amount of slots to acquire.
+     * @param slots Amount of slots.
+     */
+    private void checkSlots(long slots) {
+        if(slots < 1 || slots > maxSlots) {
+            throw new IllegalArgumentException("slots must be between 1 and the capacity of all windows");
+        }
+    }
+
+    /**
+     * Sorts windows by their reset interval.
+     * @param capacities Window capacities.
+     * @param resetIntervals Window reset intervals.
+     */
+    private static void sort(long[] capacities, long[] resetIntervals) {
+        long swap;
+        for(int i = 1; i < capacities.length; i++) {
+            for(int j = i; j > 0 && resetIntervals[j - 1] > resetIntervals[j]; j--) {
+                swap = resetIntervals[j];
+                resetIntervals[j] = resetIntervals[j - 1];
+                resetIntervals[j - 1] = swap;
+                swap = capacities[j];
+                capacities[j] = capacities[j - 1];
+                capacities[j - 1] = swap;
+            }
+        }
+    }
+}
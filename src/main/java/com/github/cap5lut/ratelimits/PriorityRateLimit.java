@@ -0,0 +1,570 @@
+package com.github.cap5lut.ratelimits;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link RateLimit} decorator granting slots to blocked acquirers by priority.
+ * <p>
+ * Blocked acquirers are queued in a heap ordered by priority, higher values first, and arrival. Whenever the decorated
+ * rate limit has slots remaining, e.g. after a reset, one of the waiting threads grants them in that order, which costs
+ * {@code O(log n)} per waiter. To protect low priorities from starvation, a reserved share of the capacity of each rate
+ * is not granted by priority while older waiters are queued, but to the oldest waiter instead.
+ * </p>
+ * <p>
+ * {@link #withPriority(int)} returns a view acquiring with a fixed priority, which can be used with {@link RateLimited},
+ * {@link RateLimitedProxy} and {@link RateLimit#acquireAll(RateLimit...)}.
+ * </p>
+ */
+public class PriorityRateLimit implements RateLimit {
+    /**
+     * Priority of acquisitions without priority.
+     */
+    public static final int DEFAULT_PRIORITY = 0;
+
+    /**
+     * Waiter is waiting for its slots.
+     */
+    private static final int WAITING = 0;
+
+    /**
+     * Waiter was granted its slots.
+     */
+    private static final int GRANTED = 1;
+
+    /**
+     * Waiter was interrupted.
+     */
+    private static final int CANCELLED = 2;
+
+    /**
+     * Waiter requested more slots than the decorated rate limit grants at once, e.g. after a reconfiguration.
+     */
+    private static final int FAILED = 3;
+
+    /**
+     * Orders waiters by priority, higher values first, and by arrival.
+     */
+    private static final Comparator<Waiter> BY_PRIORITY = (w1, w2) -> w1.priority != w2.priority
+            ? Integer.compare(w2.priority, w1.priority)
+            : Long.compare(w1.sequence, w2.sequence);
+
+    /**
+     * Queued acquirer.
+     */
+    private static final class Waiter extends AtomicInteger {
+        /**
+         * Serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Amount of slots to acquire.
+         */
+        private final long slots;
+
+        /**
+         * Priority.
+         */
+        private final int priority;
+
+        /**
+         * Arrival sequence number.
+         */
+        private final long sequence;
+
+        /**
+         * Rate ID of the granted slots, published by the state change to {@link #GRANTED}.
+         */
+        private long rateID;
+
+        /**
+         * Creates a new waiter.
+         * @param slots Amount of slots to acquire.
+         * @param priority Priority.
+         * @param sequence Arrival sequence number.
+         */
+        private Waiter(long slots, int priority, long sequence) {
+            super(WAITING);
+            this.slots = slots;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * View of the rate limit acquiring with a fixed priority.
+     */
+    private final class PriorityView implements RateLimit {
+        /**
+         * Priority.
+         */
+        private final int priority;
+
+        /**
+         * Creates a new view.
+         * @param priority Priority.
+         */
+        private PriorityView(int priority) {
+            this.priority = priority;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long acquireAndGetRateID() throws InterruptedException {
+            return PriorityRateLimit.this.acquireAndGetRateID(1, priority);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long acquireAndGetRateID(long slots) throws InterruptedException {
+            return PriorityRateLimit.this.acquireAndGetRateID(slots, priority);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long tryAcquireAndGetRateID(long slots) {
+            return PriorityRateLimit.this.tryAcquireAndGetRateID(slots);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean cancel(long rateID) {
+            return PriorityRateLimit.this.cancel(rateID);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean cancel(long rateID, long slots) {
+            return PriorityRateLimit.this.cancel(rateID, slots);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Reservation reserve(long slots) {
+            return PriorityRateLimit.this.reserve(slots);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void reconfigure(long capacity, long resetInterval, TimeUnit resetUnit) {
+            PriorityRateLimit.this.reconfigure(capacity, resetInterval, resetUnit);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getCapacity() {
+            return PriorityRateLimit.this.getCapacity();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getNextReset() {
+            return PriorityRateLimit.this.getNextReset();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getRemaining() {
+            return PriorityRateLimit.this.getRemaining();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getCurrentRateID() {
+            return PriorityRateLimit.this.getCurrentRateID();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getResetInterval() {
+            return PriorityRateLimit.this.getResetInterval();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Ticker getTicker() {
+            return PriorityRateLimit.this.getTicker();
+        }
+    }
+
+    /**
+     * Decorated rate limit.
+     */
+    private final RateLimit rateLimit;
+
+    /**
+     * Share of the capacity of each rate granted by arrival instead of priority.
+     */
+    private final double reservedShare;
+
+    /**
+     * Yielder.
+     */
+    private final Yielder yielder;
+
+    /**
+     * Lock guarding the queues and the grant accounting.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Waiters ordered by priority, granted and cancelled waiters are removed lazily.
+     */
+    private final Queue<Waiter> byPriority = new PriorityQueue<>(BY_PRIORITY);
+
+    /**
+     * Waiters ordered by arrival, granted and cancelled waiters are removed lazily.
+     */
+    private final Queue<Waiter> byArrival = new ArrayDeque<>();
+
+    /**
+     * Amount of waiters.
+     */
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    /**
+     * Next arrival sequence number.
+     */
+    private long sequence;
+
+    /**
+     * Rate ID of the grant accounting.
+     */
+    private long accountedRateID = -1;
+
+    /**
+     * Slots granted by priority in the accounted rate.
+     */
+    private long grantedByPriority;
+
+    /**
+     * Creates a new strict priority rate limit with the default yielder.
+     * @param rateLimit Rate limit to decorate.
+     */
+    public PriorityRateLimit(RateLimit rateLimit) {
+        this(rateLimit, 0, defaultYielder);
+    }
+
+    /**
+     * Creates a new priority rate limit.
+     * @param rateLimit Rate limit to decorate.
+     * @param reservedShare Share of the capacity of each rate granted by arrival, between zero and one.
+     * @param yielder Yielder.
+     */
+    public PriorityRateLimit(RateLimit rateLimit, double reservedShare, Yielder yielder) {
+        if(reservedShare < 0 || reservedShare > 1) {
+            throw new IllegalArgumentException("reserved share must be between zero and one");
+        }
+        this.rateLimit = rateLimit;
+        this.reservedShare = reservedShare;
+        this.yielder = yielder;
+    }
+
+    /**
+     * Gets a view of this rate limit acquiring with a fixed priority.
+     * @param priority Priority, higher values are granted first.
+     * @return Returns the view.
+     */
+    public RateLimit withPriority(int priority) {
+        return new PriorityView(priority);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Acquires with the {@link #DEFAULT_PRIORITY}.
+     */
+    @Override
+    public long acquireAndGetRateID() throws InterruptedException {
+        return acquireAndGetRateID(1, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Acquires with the {@link #DEFAULT_PRIORITY}.
+     */
+    @Override
+    public long acquireAndGetRateID(long slots) throws InterruptedException {
+        return acquireAndGetRateID(slots, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Acquires multiple slots with a priority.
+     * NOTE: This method will block until the slots are granted.
+     * @param slots Amount of slots, must not be greater than the capacity.
+     * @param priority Priority, higher values are granted first.
+     * @return Returns the rate ID the slots were acquired from.
+     * @throws InterruptedException if the thread was interrupted while acquiring the slots.
+     * @throws IllegalArgumentException if the slots are less than one or greater than the capacity.
+     */
+    public long acquireAndGetRateID(long slots, int priority) throws InterruptedException {
+        if(slots < 1 || slots > rateLimit.getCapacity()) {
+            throw new IllegalArgumentException("slots must be between 1 and the capacity");
+        }
+        if(waiters.get() == 0) { // nobody to overtake
+            long rateID = rateLimit.tryAcquireAndGetRateID(slots);
+            if(rateID >= 0) {
+                return rateID;
+            }
+        }
+
+        Waiter waiter = enqueue(slots, priority);
+        while(true) {
+            dispatch();
+            if(waiter.get() == GRANTED) {
+                return waiter.rateID;
+            }
+            if(waiter.get() == FAILED) {
+                throw new IllegalArgumentException("slots exceed the capacity");
+            }
+            if(Thread.interrupted()) {
+                if(waiter.compareAndSet(WAITING, CANCELLED)) {
+                    waiters.decrementAndGet();
+                }
+                else { // granted concurrently
+                    rateLimit.cancel(waiter.rateID, slots);
+                }
+                throw new InterruptedException();
+            }
+            yielder.yield();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * Fails while acquirers are queued.
+     */
+    @Override
+    public long tryAcquireAndGetRateID(long slots) {
+        return waiters.get() == 0 ? rateLimit.tryAcquireAndGetRateID(slots) : -1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel(long rateID) {
+        return rateLimit.cancel(rateID);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel(long rateID, long slots) {
+        return rateLimit.cancel(rateID, slots);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Reservation reserve(long slots) {
+        return rateLimit.reserve(slots);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reconfigure(long capacity, long resetInterval, TimeUnit resetUnit) {
+        rateLimit.reconfigure(capacity, resetInterval, resetUnit);
+    }
+
+    /**
+     * Gets the amount of waiters.
+     * @return Returns the queue depth.
+     */
+    public int getQueueDepth() {
+        return waiters.get();
+    }
+
+    /**
+     * Gets the share of the capacity of each rate granted by arrival instead of priority.
+     * @return Returns the reserved share.
+     */
+    public double getReservedShare() {
+        return reservedShare;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCapacity() {
+        return rateLimit.getCapacity();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getNextReset() {
+        return rateLimit.getNextReset();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRemaining() {
+        return rateLimit.getRemaining();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCurrentRateID() {
+        return rateLimit.getCurrentRateID();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getResetInterval() {
+        return rateLimit.getResetInterval();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Ticker getTicker() {
+        return rateLimit.getTicker();
+    }
+
+    /**
+     * Queues an acquirer.
+     * @param slots Amount of slots to acquire.
+     * @param priority Priority.
+     * @return Returns the queued waiter.
+     */
+    private Waiter enqueue(long slots, int priority) {
+        lock.lock();
+        try {
+            Waiter waiter = new Waiter(slots, priority, sequence++);
+            byPriority.add(waiter);
+            byArrival.add(waiter);
+            waiters.incrementAndGet();
+            return waiter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Grants the remaining slots of the decorated rate limit to the queued waiters, unless another thread does so
+     * already.
+     */
+    private void dispatch() {
+        if(waiters.get() == 0 || !lock.tryLock()) {
+            return;
+        }
+        try {
+            long capacity = rateLimit.getCapacity();
+            long reserved = (long) Math.ceil(capacity * reservedShare);
+            Waiter waiter;
+            Waiter oldest;
+            boolean prioritized;
+            long rateID;
+            while(true) {
+                waiter = peekWaiting(byPriority);
+                if(waiter == null) {
+                    return;
+                }
+                prioritized = true;
+                if(getGrantedByPriority() + waiter.slots > capacity - reserved) { // reserved share is left
+                    oldest = peekWaiting(byArrival);
+                    if(oldest != waiter) {
+                        waiter = oldest;
+                        prioritized = false;
+                    }
+                }
+
+                try {
+                    rateID = rateLimit.tryAcquireAndGetRateID(waiter.slots);
+                }
+                catch(IllegalArgumentException e) { // capacity shrank since the waiter was queued
+                    if(waiter.compareAndSet(WAITING, FAILED)) {
+                        waiters.decrementAndGet();
+                    }
+                    continue;
+                }
+                if(rateID < 0) {
+                    return;
+                }
+                if(rateID != accountedRateID) {
+                    accountedRateID = rateID;
+                    grantedByPriority = 0;
+                }
+                if(prioritized) {
+                    grantedByPriority += waiter.slots;
+                }
+
+                waiter.rateID = rateID;
+                if(waiter.compareAndSet(WAITING, GRANTED)) {
+                    waiters.decrementAndGet();
+                }
+                else { // cancelled concurrently
+                    rateLimit.cancel(rateID, waiter.slots);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the slots granted by priority in the current rate.
+     * @return Returns the slots granted by priority.
+     */
+    private long getGrantedByPriority() {
+        return rateLimit.getCurrentRateID() == accountedRateID ? grantedByPriority : 0;
+    }
+
+    /**
+     * Gets the first waiting waiter of a queue, removing granted and cancelled waiters before it.
+     * @param queue Queue.
+     * @return Returns the first waiting waiter or {@code null} if there is none.
+     */
+    private static Waiter peekWaiting(Queue<Waiter> queue) {
+        Waiter waiter;
+        while((waiter = queue.peek()) != null && waiter.get() != WAITING) {
+            queue.poll();
+        }
+        return waiter;
+    }
+}
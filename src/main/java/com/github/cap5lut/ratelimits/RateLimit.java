@@ -1,6 +1,5 @@
 package com.github.cap5lut.ratelimits;
 
-import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 // TODO: stuff like discord returns information about the current ratelimit state, so and update method is needed
@@ -32,6 +31,18 @@ public interface RateLimit {
         void yield();
     }
 
+    /**
+     * Time source.
+     */
+    @FunctionalInterface
+    interface Ticker {
+        /**
+         * Gets the current time.
+         * @return Returns the current time stamp in nano seconds.
+         */
+        long nanoTime();
+    }
+
     /**
      * Default resolution yielder.
      */
@@ -75,10 +86,21 @@ public interface RateLimit {
         }
     };
 
+    /**
+     * System time source based on {@link System#nanoTime()}.
+     */
+    Ticker systemTicker = new Ticker() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
     /**
      * Acquires a slot from all rate limits.
+     * Apart from the varargs array, acquiring does not allocate, since the rate limits are ordered in per thread storage.
      * NOTE: It will release unused slots.
-     * @param rateLimits Rate limits to acquire a slot from.
+     * @param rateLimits Rate limits to acquire a slot from, the array will not be modified.
      */
     static void acquireAll(RateLimit... rateLimits) throws InterruptedException {
         if(rateLimits.length == 1) { // speed up if only one rate limit was passed
@@ -86,28 +108,7 @@ public interface RateLimit {
             return;
         }
 
-        Arrays.sort(rateLimits, RateLimit::sortByLongestAcquirationFirst);
-
-        RateLimitSlot[] slots = new RateLimitSlot[rateLimits.length];
-        for(int i = 0; i < slots.length; i++) {
-            slots[i] = rateLimits[i].acquire();
-        }
-
-        while(!RateLimitSlot.areValid(slots)) {
-            // cancel valid slots
-            for(RateLimitSlot slot: slots) {
-                slot.cancel();
-            }
-
-            // sort to reacquire
-            Arrays.sort(slots, RateLimitSlot::sortByLongestReacquirationFirst);
-
-            // reacquire
-            for(RateLimitSlot slot: slots) {
-                slot.reacquire();
-            }
-        }
-
+        AcquisitionPlan.acquireAll(rateLimits);
     }
 
     /**
@@ -142,6 +143,55 @@ public interface RateLimit {
      */
     long acquireAndGetRateID() throws InterruptedException;
 
+    /**
+     * Acquires multiple slots in the current rate limit.
+     * NOTE: This method will block until enough slots are acquirable within the same rate.
+     * The default implementation acquires the slots one by one and starts over, if they ended up in different rates.
+     * @param slots Amount of slots, must not be greater than the capacity.
+     * @return Returns the current rate ID.
+     * @throws InterruptedException if the thread was interrupted while acquiring the slots.
+     */
+    default long acquireAndGetRateID(long slots) throws InterruptedException {
+        if(slots < 1 || slots > getCapacity()) {
+            throw new IllegalArgumentException("slots must be between 1 and the capacity");
+        }
+        long rateID = acquireAndGetRateID();
+        long acquired = 1;
+        long nextRateID;
+        try {
+            while(acquired < slots) {
+                nextRateID = acquireAndGetRateID();
+                if(nextRateID == rateID) {
+                    acquired++;
+                } else {
+                    cancel(rateID, acquired);
+                    rateID = nextRateID;
+                    acquired = 1;
+                }
+            }
+        } catch (InterruptedException e) {
+            cancel(rateID, acquired);
+            throw e;
+        }
+        return rateID;
+    }
+
+    /**
+     * Tries to acquire a slot in the current rate limit without blocking.
+     * @return Returns {@code true} if the slot was acquired.
+     */
+    default boolean tryAcquire() {
+        return tryAcquireAndGetRateID(1) >= 0;
+    }
+
+    /**
+     * Tries to acquire multiple slots in the current rate limit without blocking.
+     * Decorators call this method while waiting in their queues, so it must never wait for a reset.
+     * @param slots Amount of slots, must not be greater than the capacity.
+     * @return Returns the current rate ID or {@code -1} if not enough slots are remaining.
+     */
+    long tryAcquireAndGetRateID(long slots);
+
     /**
      * Tries to cancel an acquired slot.
      * @param rateID Rate ID the slot was acquired from.
@@ -149,6 +199,55 @@ public interface RateLimit {
      */
     boolean cancel(long rateID);
 
+    /**
+     * Tries to cancel multiple acquired or reserved slots.
+     * @param rateID Rate ID the slots were acquired from.
+     * @param slots Amount of slots.
+     * @return Returns {@code true} if all slots could be returned to the rate limit.
+     */
+    default boolean cancel(long rateID, long slots) {
+        boolean cancelled = true;
+        for(long i = 0; i < slots; i++) {
+            cancelled &= cancel(rateID);
+        }
+        return cancelled;
+    }
+
+    /**
+     * Reserves a slot without blocking.
+     * @return Returns the reservation.
+     * @throws UnsupportedOperationException if the rate limit does not support reservations.
+     */
+    default Reservation reserve() {
+        return reserve(1);
+    }
+
+    /**
+     * Reserves slots without blocking.
+     * The slots are claimed from the next rate having enough slots available, which might be a future rate. The
+     * returned {@link Reservation} tells when the slots become valid.
+     * @param slots Amount of slots.
+     * @return Returns the reservation.
+     * @throws UnsupportedOperationException if the rate limit does not support reservations.
+     */
+    default Reservation reserve(long slots) {
+        throw new UnsupportedOperationException("reservations are not supported");
+    }
+
+    /**
+     * Changes the capacity and reset interval without losing the state of the current rate.
+     * The slots already used in the current rate are carried over proportionally to the new capacity, and the current
+     * rate ends one new reset interval after it started. Threads waiting for slots re-evaluate with the new
+     * configuration.
+     * @param capacity New rate limit capacity.
+     * @param resetInterval New rate limit reset interval.
+     * @param resetUnit New rate limit reset interval unit.
+     * @throws UnsupportedOperationException if the rate limit does not support reconfiguration.
+     */
+    default void reconfigure(long capacity, long resetInterval, TimeUnit resetUnit) {
+        throw new UnsupportedOperationException("reconfiguration is not supported");
+    }
+
     /**
      * Rate limit slot amount per rate.
      * @return Returns the Rate limit slot amount.
@@ -179,6 +278,14 @@ public interface RateLimit {
      */
     long getResetInterval();
 
+    /**
+     * Gets the time source the next reset is based on.
+     * @return Returns the ticker.
+     */
+    default Ticker getTicker() {
+        return systemTicker;
+    }
+
     /**
      * Wrap an instance rate limited.
      * @param instance Instance to wrap.
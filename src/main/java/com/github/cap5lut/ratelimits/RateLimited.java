@@ -15,6 +15,11 @@ public class RateLimited<T> {
      */
     private final RateLimit[] rateLimits;
 
+    /**
+     * Precompiled acquisition of the rate limits.
+     */
+    private final AcquisitionPlan plan;
+
     /**
      * Wrappes an acquire and associates the rate limits to it.
      * @param instance Instance to wrap.
@@ -22,16 +27,18 @@ public class RateLimited<T> {
      */
     public RateLimited(T instance, RateLimit...rateLimits) {
         this.instance = instance;
-        this.rateLimits = rateLimits;
+        this.rateLimits = rateLimits.clone();
+        this.plan = new AcquisitionPlan(rateLimits);
     }
 
     /**
      * Acquires all needed rate limit slots and returns the wrapped acquire.
+     * NOTE: This method does not allocate.
      * @return Returns the wrapped acquire.
      * @throws InterruptedException if the thread was interrupted.
      */
     public T acquire() throws InterruptedException {
-        RateLimit.acquireAll(rateLimits);
+        plan.acquire();
         return instance;
     }
 
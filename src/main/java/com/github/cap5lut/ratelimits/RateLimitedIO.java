@@ -0,0 +1,77 @@
+package com.github.cap5lut.ratelimits;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Helpers for byte denominated rate limits of streams and channels.
+ */
+final class RateLimitedIO {
+    /**
+     * Default minimum chunk size in bytes.
+     */
+    static final int DEFAULT_MIN_CHUNK_SIZE = 512;
+
+    /**
+     * Validates a minimum chunk size.
+     * @param minChunkSize Minimum chunk size in bytes.
+     * @return Returns the minimum chunk size.
+     */
+    static int checkMinChunkSize(int minChunkSize) {
+        if(minChunkSize < 1) {
+            throw new IllegalArgumentException("minimum chunk size must be positive");
+        }
+        return minChunkSize;
+    }
+
+    /**
+     * Gets the chunk size to acquire for a transfer.
+     * The chunk is sized to the remaining slots of the current rate, so large budgets are acquired at once. If less
+     * than the minimum chunk size is remaining, the minimum chunk size is acquired from the next rate instead of
+     * transferring a few bytes at a time.
+     * @param rateLimit Byte denominated rate limit.
+     * @param wanted Bytes to transfer.
+     * @param minChunkSize Minimum chunk size in bytes.
+     * @return Returns the chunk size, at least one byte.
+     */
+    static int chunkSize(RateLimit rateLimit, int wanted, int minChunkSize) {
+        long remaining = Math.max(minChunkSize, rateLimit.getRemaining());
+        return (int) Math.min(wanted, Math.min(remaining, rateLimit.getCapacity()));
+    }
+
+    /**
+     * Acquires slots for a transfer.
+     * @param rateLimit Byte denominated rate limit.
+     * @param bytes Bytes to transfer.
+     * @param bytesTransferred Bytes already transferred by the current operation.
+     * @return Returns the rate ID the slots were acquired from.
+     * @throws InterruptedIOException if the thread was interrupted.
+     */
+    static long acquire(RateLimit rateLimit, int bytes, int bytesTransferred) throws InterruptedIOException {
+        try {
+            return rateLimit.acquireAndGetRateID(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException exception = new InterruptedIOException("interrupted while acquiring rate limit");
+            exception.bytesTransferred = bytesTransferred;
+            throw exception;
+        }
+    }
+
+    /**
+     * Returns unused slots of a transfer.
+     * @param rateLimit Byte denominated rate limit.
+     * @param rateID Rate ID the slots were acquired from.
+     * @param unused Unused slots.
+     */
+    static void release(RateLimit rateLimit, long rateID, int unused) {
+        if(unused > 0) {
+            rateLimit.cancel(rateID, unused);
+        }
+    }
+
+    /**
+     * Utility class.
+     */
+    private RateLimitedIO() {
+    }
+}
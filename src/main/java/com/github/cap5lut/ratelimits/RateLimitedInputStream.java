@@ -0,0 +1,112 @@
+package com.github.cap5lut.ratelimits;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream limiting the read bytes by a byte denominated rate limit.
+ * Bytes are acquired in chunks sized to the remaining slots of the current rate, but not smaller than a minimum chunk
+ * size. Bytes not read, because of a short read, the end of the stream or a failure, are returned to the rate limit.
+ * Per stream and shared limits compose by wrapping a rate limited stream again or by using a
+ * {@link HierarchicalRateLimit} child per stream.
+ */
+public class RateLimitedInputStream extends FilterInputStream {
+    /**
+     * Byte denominated rate limit.
+     */
+    private final RateLimit rateLimit;
+
+    /**
+     * Minimum chunk size in bytes.
+     */
+    private final int minChunkSize;
+
+    /**
+     * Creates a new rate limited input stream with the default minimum chunk size.
+     * @param in Underlying input stream.
+     * @param rateLimit Byte denominated rate limit.
+     */
+    public RateLimitedInputStream(InputStream in, RateLimit rateLimit) {
+        this(in, rateLimit, RateLimitedIO.DEFAULT_MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new rate limited input stream.
+     * @param in Underlying input stream.
+     * @param rateLimit Byte denominated rate limit.
+     * @param minChunkSize Minimum chunk size in bytes, capped by the capacity of the rate limit.
+     */
+    public RateLimitedInputStream(InputStream in, RateLimit rateLimit, int minChunkSize) {
+        super(in);
+        this.rateLimit = rateLimit;
+        this.minChunkSize = RateLimitedIO.checkMinChunkSize(minChunkSize);
+    }
+
+    /**
+     * Gets the byte denominated rate limit.
+     * @return Returns the rate limit.
+     */
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read() throws IOException {
+        long rateID = RateLimitedIO.acquire(rateLimit, 1, 0);
+        int value;
+        try {
+            value = in.read();
+        } catch (IOException | RuntimeException e) {
+            RateLimitedIO.release(rateLimit, rateID, 1);
+            throw e;
+        }
+        RateLimitedIO.release(rateLimit, rateID, value < 0 ? 1 : 0);
+        return value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0) {
+            return 0;
+        }
+        int chunk = RateLimitedIO.chunkSize(rateLimit, len, minChunkSize);
+        long rateID = RateLimitedIO.acquire(rateLimit, chunk, 0);
+        int read;
+        try {
+            read = in.read(b, off, chunk);
+        } catch (IOException | RuntimeException e) {
+            RateLimitedIO.release(rateLimit, rateID, chunk);
+            throw e;
+        }
+        RateLimitedIO.release(rateLimit, rateID, read < 0 ? chunk : chunk - read);
+        return read;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if(n <= 0) {
+            return 0;
+        }
+        int chunk = RateLimitedIO.chunkSize(rateLimit, (int) Math.min(n, Integer.MAX_VALUE), minChunkSize);
+        long rateID = RateLimitedIO.acquire(rateLimit, chunk, 0);
+        long skipped;
+        try {
+            skipped = in.skip(chunk);
+        } catch (IOException | RuntimeException e) {
+            RateLimitedIO.release(rateLimit, rateID, chunk);
+            throw e;
+        }
+        RateLimitedIO.release(rateLimit, rateID, (int) (chunk - skipped));
+        return skipped;
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.cap5lut.ratelimits;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream limiting the written bytes by a byte denominated rate limit.
+ * Bytes are acquired in chunks sized to the remaining slots of the current rate, but not smaller than a minimum chunk
+ * size. Bytes of a failed write are returned to the rate limit. Per stream and shared limits compose by wrapping a rate
+ * limited stream again or by using a {@link HierarchicalRateLimit} child per stream.
+ */
+public class RateLimitedOutputStream extends FilterOutputStream {
+    /**
+     * Byte denominated rate limit.
+     */
+    private final RateLimit rateLimit;
+
+    /**
+     * Minimum chunk size in bytes.
+     */
+    private final int minChunkSize;
+
+    /**
+     * Creates a new rate limited output stream with the default minimum chunk size.
+     * @param out Underlying output stream.
+     * @param rateLimit Byte denominated rate limit.
+     */
+    public RateLimitedOutputStream(OutputStream out, RateLimit rateLimit) {
+        this(out, rateLimit, RateLimitedIO.DEFAULT_MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new rate limited output stream.
+     * @param out Underlying output stream.
+     * @param rateLimit Byte denominated rate limit.
+     * @param minChunkSize Minimum chunk size in bytes, capped by the capacity of the rate limit.
+     */
+    public RateLimitedOutputStream(OutputStream out, RateLimit rateLimit, int minChunkSize) {
+        super(out);
+        this.rateLimit = rateLimit;
+        this.minChunkSize = RateLimitedIO.checkMinChunkSize(minChunkSize);
+    }
+
+    /**
+     * Gets the byte denominated rate limit.
+     * @return Returns the rate limit.
+     */
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(int b) throws IOException {
+        long rateID = RateLimitedIO.acquire(rateLimit, 1, 0);
+        try {
+            out.write(b);
+        } catch (IOException | RuntimeException e) {
+            RateLimitedIO.release(rateLimit, rateID, 1);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int written = 0;
+        int chunk;
+        long rateID;
+        while(written < len) {
+            chunk = RateLimitedIO.chunkSize(rateLimit, len - written, minChunkSize);
+            rateID = RateLimitedIO.acquire(rateLimit, chunk, written);
+            try {
+                out.write(b, off + written, chunk);
+            } catch (IOException | RuntimeException e) {
+                RateLimitedIO.release(rateLimit, rateID, chunk);
+                throw e;
+            }
+            written += chunk;
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.github.cap5lut.ratelimits;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates proxies, which acquire the rate limits of each method before delegating the call.
+ * The rate limits of a method are resolved once at proxy creation into a dispatch table of {@link MethodHandle}s. The
+ * table is indexed by the identity of the {@link Method} instances the proxy class passes to its handler, so a call
+ * only costs an identity probe, the slot acquisition and the delegation.
+ * NOTE: If the thread is interrupted while acquiring a slot and the method does not declare
+ * {@link InterruptedException}, the proxy throws an {@link java.lang.reflect.UndeclaredThrowableException}.
+ */
+public final class RateLimitedProxy {
+    /**
+     * Proxy builder.
+     * @param <T> Interface type.
+     */
+    public static final class Builder<T> {
+        /**
+         * Proxied interface.
+         */
+        private final Class<T> type;
+
+        /**
+         * Wrapped instance.
+         */
+        private final T instance;
+
+        /**
+         * Rate limits by name.
+         */
+        private final Map<String, RateLimit> bindings = new HashMap<>();
+
+        /**
+         * Additional rate limits by method name.
+         */
+        private final Map<String, List<RateLimit>> methodLimits = new HashMap<>();
+
+        /**
+         * Creates a new builder.
+         * @param type Proxied interface.
+         * @param instance Wrapped instance.
+         */
+        private Builder(Class<T> type, T instance) {
+            if(!type.isInterface()) {
+                throw new IllegalArgumentException(type.getName() + " is not an interface");
+            }
+            this.type = type;
+            this.instance = type.cast(instance);
+        }
+
+        /**
+         * Binds a rate limit to a name used in {@link Limited} annotations.
+         * @param name Rate limit name.
+         * @param rateLimit Rate limit.
+         * @return Returns itself for method chaining.
+         */
+        public Builder<T> bind(String name, RateLimit rateLimit) {
+            bindings.put(name, rateLimit);
+            return this;
+        }
+
+        /**
+         * Adds rate limits to all methods with the given name, in addition to annotated rate limits.
+         * @param methodName Method name.
+         * @param rateLimits Rate limits.
+         * @return Returns itself for method chaining.
+         */
+        public Builder<T> limit(String methodName, RateLimit... rateLimits) {
+            methodLimits.computeIfAbsent(methodName, k -> new ArrayList<>()).addAll(Arrays.asList(rateLimits));
+            return this;
+        }
+
+        /**
+         * Creates the proxy.
+         * @return Returns the proxy.
+         */
+        public T build() {
+            Method[] methods = type.getMethods();
+            Recorder recorder = new Recorder();
+            Object probe = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, recorder);
+            Handler handler = new Handler(methods.length + OBJECT_METHODS.length);
+            for(Method method: methods) {
+                if(Modifier.isStatic(method.getModifiers())) {
+                    continue;
+                }
+                Method dispatched = recorder.record(probe, method);
+                if(!handler.contains(dispatched)) {
+                    handler.put(dispatched, new Invoker(unreflect(dispatched),
+                            new AcquisitionPlan(resolve(dispatched))));
+                }
+            }
+            for(Method method: OBJECT_METHODS) {
+                handler.put(recorder.record(probe, method), new Invoker(unreflect(method), new AcquisitionPlan()));
+            }
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+        }
+
+        /**
+         * Resolves the rate limits of a method.
+         * @param method Method.
+         * @return Returns the rate limits.
+         */
+        private RateLimit[] resolve(Method method) {
+            Set<RateLimit> rateLimits = new LinkedHashSet<>();
+            resolve(method.getDeclaringClass().getAnnotation(Limited.class), rateLimits);
+            if(method.getDeclaringClass() != type) {
+                resolve(type.getAnnotation(Limited.class), rateLimits);
+            }
+            resolve(method.getAnnotation(Limited.class), rateLimits);
+            rateLimits.addAll(methodLimits.getOrDefault(method.getName(), Collections.emptyList()));
+            return rateLimits.toArray(new RateLimit[0]);
+        }
+
+        /**
+         * Resolves the rate limits named by an annotation.
+         * @param limited Annotation or {@code null}.
+         * @param rateLimits Resolved rate limits.
+         */
+        private void resolve(Limited limited, Set<RateLimit> rateLimits) {
+            if(limited == null) {
+                return;
+            }
+            for(String name: limited.value()) {
+                RateLimit rateLimit = bindings.get(name);
+                if(rateLimit == null) {
+                    throw new IllegalStateException("no rate limit bound to name " + name);
+                }
+                rateLimits.add(rateLimit);
+            }
+        }
+
+        /**
+         * Creates a method handle invoking the method on the wrapped instance with an argument array.
+         * @param method Method.
+         * @return Returns the method handle of type {@code (Object[])Object}.
+         */
+        private MethodHandle unreflect(Method method) {
+            if(!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                method.setAccessible(true);
+            }
+            try {
+                return MethodHandles.lookup()
+                        .unreflect(method)
+                        .bindTo(instance)
+                        .asSpreader(Object[].class, method.getParameterCount())
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("method " + method + " is not accessible", e);
+            }
+        }
+    }
+
+    /**
+     * Dispatch table entry.
+     */
+    private static final class Invoker {
+        /**
+         * Delegating method handle of type {@code (Object[])Object}.
+         */
+        private final MethodHandle handle;
+
+        /**
+         * Precompiled acquisition of the method's rate limits.
+         */
+        private final AcquisitionPlan plan;
+
+        /**
+         * Creates a new dispatch table entry.
+         * @param handle Delegating method handle.
+         * @param plan Precompiled acquisition of the method's rate limits.
+         */
+        private Invoker(MethodHandle handle, AcquisitionPlan plan) {
+            this.handle = handle;
+            this.plan = plan;
+        }
+
+        /**
+         * Acquires the rate limits and invokes the method.
+         * @param args Method arguments.
+         * @return Returns the method's return value.
+         * @throws Throwable if the method threw or acquiring was interrupted.
+         */
+        private Object invoke(Object[] args) throws Throwable {
+            plan.acquire();
+            return (Object) handle.invokeExact(args == null ? NO_ARGS : args);
+        }
+    }
+
+    /**
+     * Proxy invocation handler dispatching via the precomputed table.
+     */
+    private static final class Handler implements InvocationHandler {
+        /**
+         * Dispatched methods, open addressed by their identity hash code.
+         */
+        private final Method[] methods;
+
+        /**
+         * Dispatch table, with the same indices as {@link #methods}.
+         */
+        private final Invoker[] invokers;
+
+        /**
+         * Index mask.
+         */
+        private final int mask;
+
+        /**
+         * Creates a new invocation handler.
+         * @param count Maximum number of dispatched methods.
+         */
+        private Handler(int count) {
+            int size = Integer.highestOneBit(Math.max(1, count * 2 - 1)) << 1;
+            methods = new Method[size];
+            invokers = new Invoker[size];
+            mask = size - 1;
+        }
+
+        /**
+         * Looks up the table index of a method.
+         * @param method Method as passed by the proxy class.
+         * @return Returns the index of the method or of the free entry, where it belongs.
+         */
+        private int indexOf(Method method) {
+            int index = System.identityHashCode(method) & mask;
+            Method key;
+            while((key = methods[index]) != method && key != null) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        /**
+         * Checks if a method is dispatched.
+         * @param method Method as passed by the proxy class.
+         * @return Returns {@code true} if the method is dispatched.
+         */
+        private boolean contains(Method method) {
+            return methods[indexOf(method)] != null;
+        }
+
+        /**
+         * Adds a method to the dispatch table.
+         * @param method Method as passed by the proxy class.
+         * @param invoker Dispatch table entry.
+         */
+        private void put(Method method, Invoker invoker) {
+            int index = indexOf(method);
+            methods[index] = method;
+            invokers[index] = invoker;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Invoker invoker = invokers[indexOf(method)];
+            if(invoker == null) {
+                throw new IllegalStateException("method " + method + " is not dispatched");
+            }
+            return invoker.invoke(args);
+        }
+    }
+
+    /**
+     * Proxy invocation handler recording which {@link Method} instance the proxy class passes for a method.
+     * The proxy class is shared by all proxies of the same interface and passes the same instance on each call, so the
+     * recorded instances identify the methods of the actual proxy.
+     */
+    private static final class Recorder implements InvocationHandler {
+        /**
+         * Last passed method.
+         */
+        private Method method;
+
+        /**
+         * Calls a method on a proxy and records the passed {@link Method} instance.
+         * @param probe Proxy of the same proxy class using this recorder.
+         * @param method Interface or {@link Object} method.
+         * @return Returns the {@link Method} instance passed by the proxy class.
+         */
+        private Method record(Object probe, Method method) {
+            if(!Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+                method.setAccessible(true);
+            }
+            Class<?>[] parameterTypes = method.getParameterTypes();
+            Object[] args = new Object[parameterTypes.length];
+            for(int i = 0; i < args.length; i++) {
+                args[i] = defaultValue(parameterTypes[i]);
+            }
+            try {
+                method.invoke(probe, args);
+            } catch (IllegalAccessException | InvocationTargetException e) {
+                throw new IllegalArgumentException("method " + method + " is not accessible", e);
+            }
+            return this.method;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            this.method = method;
+            return defaultValue(method.getReturnType());
+        }
+
+        /**
+         * Gets the default value of a type.
+         * @param type Type.
+         * @return Returns the boxed zero value of a primitive type, or {@code null} otherwise.
+         */
+        private static Object defaultValue(Class<?> type) {
+            return type.isPrimitive() && type != void.class ? Array.get(Array.newInstance(type, 1), 0) : null;
+        }
+    }
+
+    /**
+     * Empty argument array.
+     */
+    private static final Object[] NO_ARGS = new Object[0];
+
+    /**
+     * {@link Object} methods dispatched by proxies.
+     */
+    private static final Method[] OBJECT_METHODS;
+
+    static {
+        try {
+            OBJECT_METHODS = new Method[] {
+                    Object.class.getMethod("equals", Object.class),
+                    Object.class.getMethod("hashCode"),
+                    Object.class.getMethod("toString")
+            };
+        } catch (NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Creates a proxy builder.
+     * @param type Proxied interface.
+     * @param instance Wrapped instance.
+     * @param <T> Interface type.
+     * @return Returns the proxy builder.
+     */
+    public static <T> Builder<T> builder(Class<T> type, T instance) {
+        return new Builder<>(type, instance);
+    }
+
+    /**
+     * Utility class.
+     */
+    private RateLimitedProxy() {
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.cap5lut.ratelimits;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Readable byte channel limiting the read bytes by a byte denominated rate limit.
+ * The destination buffer is passed through to the underlying channel, only its limit is lowered temporarily to the
+ * acquired chunk, so direct buffers keep their zero copy behavior. Chunks are sized to the remaining slots of the
+ * current rate, but not smaller than a minimum chunk size. Bytes not read, because of a short read, the end of the
+ * stream or a failure, are returned to the rate limit.
+ */
+public class RateLimitedReadableByteChannel implements ReadableByteChannel {
+    /**
+     * Underlying channel.
+     */
+    private final ReadableByteChannel channel;
+
+    /**
+     * Byte denominated rate limit.
+     */
+    private final RateLimit rateLimit;
+
+    /**
+     * Minimum chunk size in bytes.
+     */
+    private final int minChunkSize;
+
+    /**
+     * Creates a new rate limited readable byte channel with the default minimum chunk size.
+     * @param channel Underlying channel.
+     * @param rateLimit Byte denominated rate limit.
+     */
+    public RateLimitedReadableByteChannel(ReadableByteChannel channel, RateLimit rateLimit) {
+        this(channel, rateLimit, RateLimitedIO.DEFAULT_MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new rate limited readable byte channel.
+     * @param channel Underlying channel.
+     * @param rateLimit Byte denominated rate limit.
+     * @param minChunkSize Minimum chunk size in bytes, capped by the capacity of the rate limit.
+     */
+    public RateLimitedReadableByteChannel(ReadableByteChannel channel, RateLimit rateLimit, int minChunkSize) {
+        this.channel = channel;
+        this.rateLimit = rateLimit;
+        this.minChunkSize = RateLimitedIO.checkMinChunkSize(minChunkSize);
+    }
+
+    /**
+     * Gets the byte denominated rate limit.
+     * @return Returns the rate limit.
+     */
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if(!dst.hasRemaining()) {
+            return channel.read(dst);
+        }
+
+        int chunk = RateLimitedIO.chunkSize(rateLimit, dst.remaining(), minChunkSize);
+        long rateID = RateLimitedIO.acquire(rateLimit, chunk, 0);
+        int limit = dst.limit();
+        int read;
+        dst.limit(dst.position() + chunk);
+        try {
+            read = channel.read(dst);
+        } catch (IOException | RuntimeException e) {
+            RateLimitedIO.release(rateLimit, rateID, chunk);
+            throw e;
+        } finally {
+            dst.limit(limit);
+        }
+        RateLimitedIO.release(rateLimit, rateID, read < 0 ? chunk : chunk - read);
+        return read;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
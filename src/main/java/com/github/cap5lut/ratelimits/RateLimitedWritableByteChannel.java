@@ -0,0 +1,106 @@
+package com.github.cap5lut.ratelimits;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writable byte channel limiting the written bytes by a byte denominated rate limit.
+ * The source buffer is passed through to the underlying channel, only its limit is lowered temporarily to the acquired
+ * chunk, so direct buffers keep their zero copy behavior. Chunks are sized to the remaining slots of the current rate,
+ * but not smaller than a minimum chunk size. Writing stops early, if the underlying channel did not write a whole
+ * chunk, e.g. because it is in non-blocking mode. Bytes not written, because of that or a failure, are returned to the
+ * rate limit.
+ */
+public class RateLimitedWritableByteChannel implements WritableByteChannel {
+    /**
+     * Underlying channel.
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * Byte denominated rate limit.
+     */
+    private final RateLimit rateLimit;
+
+    /**
+     * Minimum chunk size in bytes.
+     */
+    private final int minChunkSize;
+
+    /**
+     * Creates a new rate limited writable byte channel with the default minimum chunk size.
+     * @param channel Underlying channel.
+     * @param rateLimit Byte denominated rate limit.
+     */
+    public RateLimitedWritableByteChannel(WritableByteChannel channel, RateLimit rateLimit) {
+        this(channel, rateLimit, RateLimitedIO.DEFAULT_MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a new rate limited writable byte channel.
+     * @param channel Underlying channel.
+     * @param rateLimit Byte denominated rate limit.
+     * @param minChunkSize Minimum chunk size in bytes, capped by the capacity of the rate limit.
+     */
+    public RateLimitedWritableByteChannel(WritableByteChannel channel, RateLimit rateLimit, int minChunkSize) {
+        this.channel = channel;
+        this.rateLimit = rateLimit;
+        this.minChunkSize = RateLimitedIO.checkMinChunkSize(minChunkSize);
+    }
+
+    /**
+     * Gets the byte denominated rate limit.
+     * @return Returns the rate limit.
+     */
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int limit = src.limit();
+        int written = 0;
+        int chunk;
+        int chunkWritten;
+        long rateID;
+        while(src.hasRemaining()) {
+            chunk = RateLimitedIO.chunkSize(rateLimit, src.remaining(), minChunkSize);
+            rateID = RateLimitedIO.acquire(rateLimit, chunk, written);
+            src.limit(src.position() + chunk);
+            try {
+                chunkWritten = channel.write(src);
+            } catch (IOException | RuntimeException e) {
+                RateLimitedIO.release(rateLimit, rateID, chunk);
+                throw e;
+            } finally {
+                src.limit(limit);
+            }
+            written += chunkWritten;
+            if(chunkWritten < chunk) {
+                RateLimitedIO.release(rateLimit, rateID, chunk - chunkWritten);
+                break;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
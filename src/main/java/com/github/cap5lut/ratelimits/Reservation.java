@@ -0,0 +1,111 @@
+package com.github.cap5lut.ratelimits;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents reserved rate limit slots, which become valid at a known point in time.
+ * As it implements {@link Delayed}, reservations can be put directly into a {@link java.util.concurrent.DelayQueue}.
+ */
+public class Reservation implements Delayed {
+    /**
+     * Originating rate limit.
+     */
+    private final RateLimit rateLimit;
+
+    /**
+     * Rate ID the slots were reserved in.
+     */
+    private final long rateID;
+
+    /**
+     * Amount of reserved slots.
+     */
+    private final long slots;
+
+    /**
+     * Time stamp in nano seconds the slots become valid at.
+     */
+    private final long validAt;
+
+    /**
+     * Creates a reservation.
+     * @param rateLimit Originating rate limit.
+     * @param rateID Rate ID the slots were reserved in.
+     * @param slots Amount of reserved slots.
+     * @param validAt Time stamp in nano seconds the slots become valid at.
+     */
+    public Reservation(RateLimit rateLimit, long rateID, long slots, long validAt) {
+        this.rateLimit = rateLimit;
+        this.rateID = rateID;
+        this.slots = slots;
+        this.validAt = validAt;
+    }
+
+    /**
+     * Cancels the reservation.
+     * @return Returns {@code true} if the reserved slots could be returned to the rate limit.
+     */
+    public boolean cancel() {
+        return rateLimit.cancel(rateID, slots);
+    }
+
+    /**
+     * Gets the time until the slots become valid.
+     * @return Returns the delay in nano seconds, zero or negative if the slots are already valid.
+     */
+    public long getDelay() {
+        return validAt - rateLimit.getTicker().nanoTime();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(getDelay(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the originating rate limit.
+     * @return Returns the originating rate limit.
+     */
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * Gets the rate ID the slots were reserved in.
+     * @return Returns the rate ID.
+     */
+    public long getRateID() {
+        return rateID;
+    }
+
+    /**
+     * Gets the amount of reserved slots.
+     * @return Returns the amount of reserved slots.
+     */
+    public long getSlots() {
+        return slots;
+    }
+
+    /**
+     * Gets the time stamp the slots become valid at.
+     * @return Returns the time stamp in nano seconds.
+     */
+    public long getValidAt() {
+        return validAt;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compareTo(Delayed o) {
+        if(o instanceof Reservation) {
+            return Long.signum(validAt - ((Reservation) o).validAt);
+        }
+        return Long.compare(getDelay(TimeUnit.NANOSECONDS), o.getDelay(TimeUnit.NANOSECONDS));
+    }
+}
@@ -0,0 +1,535 @@
+package com.github.cap5lut.ratelimits;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free {@link RateLimit} implementation, which warms up from a fraction of its capacity.
+ * <p>
+ * After creation the rate limit is cold and only grants {@code coldFactor * capacity} slots per rate. Each rate warms
+ * the rate limit by its utilization, so the full capacity is reached after using all granted slots for the warm-up
+ * period. Each rate without any acquired slot cools the rate limit down again, so it is cold again after being idle
+ * for the cool-down period.
+ * </p>
+ * <p>
+ * Like {@link ConcurrentRateLimit}, each rate is represented by an immutable state holding an atomic counter of the
+ * remaining slots, so acquiring and cancelling slots do not allocate. Reservations are not supported, reconfigurations
+ * keep the warmth.
+ * </p>
+ */
+public class WarmingUpRateLimit implements RateLimit {
+    /**
+     * Remaining slots of a state being replaced by a reconfiguration.
+     */
+    private static final long FROZEN = Long.MIN_VALUE;
+
+    /**
+     * Default fraction of the capacity granted by a cold rate limit.
+     */
+    public static final double DEFAULT_COLD_FACTOR = 1 / 3.0d;
+
+    /**
+     * Default warm-up and cool-down period in reset intervals.
+     */
+    public static final int DEFAULT_WARMUP_RATES = 10;
+
+    /**
+     * Rate limit state.
+     */
+    private final class State {
+        /**
+         * Next reset time stamp in nano seconds.
+         */
+        private final long nextReset;
+
+        /**
+         * Remaining rate limit slots.
+         */
+        private final AtomicLong remaining;
+
+        /**
+         * Rate ID.
+         */
+        private final long rateID;
+
+        /**
+         * Warmth in nano seconds of full utilization, between zero and the warm-up period.
+         */
+        private final long warmth;
+
+        /**
+         * Rate limit capacity of this rate.
+         */
+        private final long rateCapacity;
+
+        /**
+         * Rate limit capacity when warm.
+         */
+        private final long capacity;
+
+        /**
+         * Rate limit capacity when cold.
+         */
+        private final long coldCapacity;
+
+        /**
+         * Rate limit reset interval in nano seconds.
+         */
+        private final long resetInterval;
+
+        /**
+         * Whether the rate was reconfigured, so slots acquired before may exceed the rate capacity when returned.
+         */
+        private final boolean reconfigured;
+
+        /**
+         * Creates a new initial state.
+         * @param capacity Rate limit capacity when warm.
+         * @param resetInterval Rate limit reset interval in nano seconds.
+         */
+        private State(long capacity, long resetInterval) {
+            this(ticker.nanoTime() + resetInterval, 0, 0, getColdCapacity(capacity), getColdCapacity(capacity),
+                    capacity, resetInterval, false);
+        }
+
+        /**
+         * Creates a new state.
+         * @param nextReset Next reset timestamp in nano seconds.
+         * @param rateID Rate ID.
+         * @param warmth Warmth in nano seconds.
+         * @param rateCapacity Rate limit capacity of this rate.
+         * @param remaining Remaining slots.
+         * @param capacity Rate limit capacity when warm.
+         * @param resetInterval Rate limit reset interval in nano seconds.
+         * @param reconfigured Whether the rate was reconfigured.
+         */
+        private State(long nextReset, long rateID, long warmth, long rateCapacity, long remaining, long capacity,
+                long resetInterval, boolean reconfigured) {
+            this.nextReset = nextReset;
+            this.remaining = new AtomicLong(remaining);
+            this.rateID = rateID;
+            this.warmth = warmth;
+            this.rateCapacity = rateCapacity;
+            this.capacity = capacity;
+            this.coldCapacity = getColdCapacity(capacity);
+            this.resetInterval = resetInterval;
+            this.reconfigured = reconfigured;
+        }
+
+        /**
+         * Gets the resetted state.
+         * The warmth is increased by the utilization of this rate and decreased by the skipped idle rates.
+         * @return Returns the resetted state or {@code null} if this state is being reconfigured.
+         */
+        private State getResettedState() {
+            long currentRemaining = remaining.get();
+            if(currentRemaining == FROZEN) {
+                return null;
+            }
+            long skippedRates = (long) (Math.floor((ticker.nanoTime() - nextReset) / (resetInterval * 1.0d)) + 1);
+            double utilization = (rateCapacity - currentRemaining) / (double) rateCapacity;
+            double nextWarmth = warmth
+                    + resetInterval * utilization
+                    - (skippedRates - 1) * resetInterval * (warmupPeriod / (double) cooldownPeriod);
+            if(utilization == 0) { // this rate was idle as well
+                nextWarmth -= resetInterval * (warmupPeriod / (double) cooldownPeriod);
+            }
+            long clampedWarmth = (long) Math.max(0, Math.min(warmupPeriod, nextWarmth));
+            long nextCapacity = getRateCapacity(clampedWarmth);
+            return new State(nextReset + skippedRates * resetInterval, rateID + skippedRates, clampedWarmth,
+                    nextCapacity, nextCapacity, capacity, resetInterval, false);
+        }
+
+        /**
+         * Gets the reconfigured state.
+         * The warmth is kept, the used slots of the current rate are carried over proportionally to the new rate
+         * capacity and the current rate ends after the new reset interval.
+         * @param remaining Remaining slots of this state.
+         * @param capacity New rate limit capacity when warm.
+         * @param resetInterval New rate limit reset interval in nano seconds.
+         * @return Returns the reconfigured state.
+         */
+        private State getReconfiguredState(long remaining, long capacity, long resetInterval) {
+            State next = new State(nextReset - this.resetInterval + resetInterval, rateID, warmth, 0, 0, capacity,
+                    resetInterval, true);
+            long nextCapacity = next.getRateCapacity(warmth);
+            long carriedOver = (long) Math.ceil((rateCapacity - remaining) * (nextCapacity / (double) rateCapacity));
+            return new State(next.nextReset, rateID, warmth, nextCapacity, Math.max(0, nextCapacity - carriedOver),
+                    capacity, resetInterval, true);
+        }
+
+        /**
+         * Gets the rate capacity for a warmth.
+         * @param warmth Warmth in nano seconds.
+         * @return Returns the rate capacity.
+         */
+        private long getRateCapacity(long warmth) {
+            return coldCapacity + (long) ((capacity - coldCapacity) * (warmth / (double) warmupPeriod));
+        }
+
+        /**
+         * Tries to take slots from the remaining slots.
+         * @param slots Slots to take.
+         * @return Returns {@code true} if the slots were taken.
+         */
+        private boolean tryDecrement(long slots) {
+            long current;
+            do {
+                current = remaining.get();
+                if(current < slots) { // not enough slots or frozen
+                    return false;
+                }
+            } while(!remaining.compareAndSet(current, current - slots));
+            return true;
+        }
+
+        /**
+         * Returns slots to the remaining slots.
+         * @param slots Slots to return.
+         * @return Returns {@code false} if the state is being reconfigured.
+         */
+        private boolean tryIncrement(long slots) {
+            long current;
+            do {
+                current = remaining.get();
+                if(current == FROZEN) {
+                    return false;
+                }
+                if(current + slots > rateCapacity && !reconfigured) {
+                    throw new IllegalStateException("remaining must not become greater than the capacity");
+                }
+            } while(!remaining.compareAndSet(current, Math.min(rateCapacity, current + slots)));
+            return true;
+        }
+
+        /**
+         * Checks the amount of slots to acquire.
+         * @param slots Amount of slots.
+         */
+        private void checkSlots(long slots) {
+            if(slots < 1 || slots > capacity) {
+                throw new IllegalArgumentException("slots must be between 1 and the capacity");
+            }
+        }
+
+        /**
+         * Checks if the state is being replaced by a reconfiguration.
+         * @return Returns {@code true} if the remaining slots are frozen.
+         */
+        private boolean isFrozen() {
+            return remaining.get() == FROZEN;
+        }
+
+        /**
+         * Checks if the state is outdated.
+         * @return Returns {@code true} if the state is outdated.
+         */
+        private boolean hasToUpdate() {
+            return ticker.nanoTime() >= nextReset;
+        }
+    }
+
+    /**
+     * Yielder.
+     */
+    private final Yielder yielder;
+
+    /**
+     * Time source.
+     */
+    private final Ticker ticker;
+
+    /**
+     * Fraction of the capacity granted when cold.
+     */
+    private final double coldFactor;
+
+    /**
+     * Warm-up period in nano seconds.
+     */
+    private final long warmupPeriod;
+
+    /**
+     * Cool-down period in nano seconds.
+     */
+    private final long cooldownPeriod;
+
+    /**
+     * Current rate limit state.
+     */
+    private final AtomicReference<State> currentState;
+
+    /**
+     * Creates a new rate limit with the default cold factor, warm-up and cool-down periods and yielder.
+     * @param capacity Rate limit capacity when warm.
+     * @param resetInterval Rate limit reset interval.
+     * @param resetUnit Rate limit reset interval unit.
+     */
+    public WarmingUpRateLimit(long capacity, long resetInterval, TimeUnit resetUnit) {
+        this(capacity, resetInterval, resetUnit, DEFAULT_COLD_FACTOR, DEFAULT_WARMUP_RATES * resetInterval,
+                DEFAULT_WARMUP_RATES * resetInterval, resetUnit, defaultYielder);
+    }
+
+    /**
+     * Creates a new rate limit.
+     * @param capacity Rate limit capacity when warm.
+     * @param resetInterval Rate limit reset interval.
+     * @param resetUnit Rate limit reset interval unit.
+     * @param coldFactor Fraction of the capacity granted when cold, between zero and one.
+     * @param warmupPeriod Time of full utilization until the rate limit is warm.
+     * @param cooldownPeriod Idle time until the rate limit is cold again.
+     * @param periodUnit Warm-up and cool-down period unit.
+     * @param yielder Yielder.
+     */
+    public WarmingUpRateLimit(long capacity, long resetInterval, TimeUnit resetUnit, double coldFactor,
+            long warmupPeriod, long cooldownPeriod, TimeUnit periodUnit, Yielder yielder) {
+        this(capacity, resetInterval, resetUnit, coldFactor, warmupPeriod, cooldownPeriod, periodUnit, yielder,
+                systemTicker);
+    }
+
+    /**
+     * Creates a new rate limit on a custom time source.
+     * @param capacity Rate limit capacity when warm.
+     * @param resetInterval Rate limit reset interval.
+     * @param resetUnit Rate limit reset interval unit.
+     * @param coldFactor Fraction of the capacity granted when cold, between zero and one.
+     * @param warmupPeriod Time of full utilization until the rate limit is warm.
+     * @param cooldownPeriod Idle time until the rate limit is cold again.
+     * @param periodUnit Warm-up and cool-down period unit.
+     * @param yielder Yielder.
+     * @param ticker Time source.
+     */
+    public WarmingUpRateLimit(long capacity, long resetInterval, TimeUnit resetUnit, double coldFactor,
+            long warmupPeriod, long cooldownPeriod, TimeUnit periodUnit, Yielder yielder, Ticker ticker) {
+        if(coldFactor <= 0 || coldFactor > 1) {
+            throw new IllegalArgumentException("cold factor must be greater than zero and not greater than one");
+        }
+        if(warmupPeriod <= 0 || cooldownPeriod <= 0) {
+            throw new IllegalArgumentException("warm-up and cool-down periods must be greater than zero");
+        }
+        this.coldFactor = coldFactor;
+        this.warmupPeriod = periodUnit.toNanos(warmupPeriod);
+        this.cooldownPeriod = periodUnit.toNanos(cooldownPeriod);
+        this.yielder = yielder;
+        this.ticker = ticker;
+        currentState = new AtomicReference<>(new State(capacity, resetUnit.toNanos(resetInterval)));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long acquireAndGetRateID() throws InterruptedException {
+        return acquireAndGetRateID(1);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws IllegalArgumentException if the slots exceed the capacity of the current rate while warming up, since
+     *         waiting would not warm up the rate limit.
+     */
+    @Override
+    public long acquireAndGetRateID(long slots) throws InterruptedException {
+        State current;
+        while(true) {
+            current = getUpdatedState();
+            current.checkSlots(slots);
+            if(slots > current.rateCapacity) {
+                throw new IllegalArgumentException("slots must not be greater than the capacity of the current rate");
+            }
+            if(current.tryDecrement(slots)) {
+                if(isCurrent(current)) {
+                    return current.rateID;
+                }
+                current.tryIncrement(slots); // the rate was reset in between
+                continue;
+            }
+            if(Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            yielder.yield(); // wait for the next reset or reconfiguration
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long tryAcquireAndGetRateID(long slots) {
+        State current;
+        while(true) {
+            current = getUpdatedState();
+            current.checkSlots(slots);
+            if(current.tryDecrement(slots)) {
+                if(isCurrent(current)) {
+                    return current.rateID;
+                }
+                current.tryIncrement(slots); // the rate was reset in between
+                continue;
+            }
+            if(!current.isFrozen()) {
+                return -1;
+            }
+            Thread.yield(); // wait for the reconfiguration
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel(long rateID) {
+        return cancel(rateID, 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean cancel(long rateID, long slots) {
+        State current;
+        do {
+            current = getUpdatedState();
+            if(current.rateID != rateID) {
+                return false;
+            }
+        } while(!current.tryIncrement(slots)); // retry while being reconfigured
+        return isCurrent(current); // the rate might have been reset in between
+    }
+
+    /**
+     * {@inheritDoc}
+     * The warmth is kept, so the capacity of the current rate is derived from the new capacity.
+     */
+    @Override
+    public void reconfigure(long capacity, long resetInterval, TimeUnit resetUnit) {
+        if(capacity < 1 || resetInterval < 1) {
+            throw new IllegalArgumentException("capacity and reset interval must be greater than zero");
+        }
+
+        long interval = resetUnit.toNanos(resetInterval);
+        State current;
+        long remaining;
+        while(true) {
+            current = getUpdatedState();
+            remaining = current.remaining.getAndSet(FROZEN);
+            if(remaining == FROZEN) { // reconfigured concurrently
+                Thread.yield();
+                continue;
+            }
+            if(currentState.compareAndSet(current, current.getReconfiguredState(remaining, capacity, interval))) {
+                return;
+            }
+            current.remaining.set(remaining); // state changed in between, unfreeze and retry
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * This is the capacity when warm.
+     */
+    @Override
+    public long getCapacity() {
+        return currentState.get().capacity;
+    }
+
+    /**
+     * Gets the capacity of the current rate.
+     * @return Returns the capacity of the current rate.
+     */
+    public long getRateCapacity() {
+        return getUpdatedState().rateCapacity;
+    }
+
+    /**
+     * Gets the rate limit capacity when cold.
+     * @return Returns the cold capacity.
+     */
+    public long getColdCapacity() {
+        return currentState.get().coldCapacity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCurrentRateID() {
+        return getUpdatedState().rateID;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getNextReset() {
+        return getUpdatedState().nextReset;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRemaining() {
+        return Math.max(0, getUpdatedState().remaining.get());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getResetInterval() {
+        return currentState.get().resetInterval;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Ticker getTicker() {
+        return ticker;
+    }
+
+    /**
+     * Gets the capacity when cold.
+     * @param capacity Rate limit capacity when warm.
+     * @return Returns the capacity when cold.
+     */
+    private long getColdCapacity(long capacity) {
+        return Math.max(1, Math.round(capacity * coldFactor));
+    }
+
+    /**
+     * Updates the current state for missing resets.
+     * @return Returns the updated state.
+     */
+    private State getUpdatedState() {
+        State current;
+        State next;
+        while(true) {
+            current = currentState.get();
+            if(!current.hasToUpdate()) {
+                return current;
+            }
+            next = current.getResettedState();
+            if(next == null) { // wait for the reconfiguration
+                Thread.yield();
+            }
+            else if(currentState.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Checks if changes to the counter of a state took effect.
+     * A reset replaces the counter, so changes after it are lost. A reconfiguration freezes the counter and carries
+     * over the changes done before, so the rate stays valid.
+     * @param state State whose counter was changed.
+     * @return Returns {@code true} if the rate of the state is still the current rate.
+     */
+    private boolean isCurrent(State state) {
+        State current = currentState.get();
+        return current == state || current.rateID == state.rateID;
+    }
+}
@@ -0,0 +1,236 @@
+package com.github.cap5lut.ratelimits;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays an arrival {@link Trace} through a rate limit on a virtual clock.
+ * Requests are served first in first out, each acquiring one slot. A request is admitted as soon as the rate limit
+ * grants a slot and rejected once it waited longer than the maximum wait. As no real time passes, hours of traffic are
+ * simulated within seconds and runs are repeatable.
+ */
+public class LoadSimulator {
+    /**
+     * Factory of rate limits on a given time source.
+     */
+    @FunctionalInterface
+    public interface Factory {
+        /**
+         * Creates a rate limit.
+         * @param capacity Rate limit capacity.
+         * @param resetInterval Rate limit reset interval.
+         * @param resetUnit Rate limit reset interval unit.
+         * @param ticker Time source the rate limit has to use.
+         * @return Returns the rate limit.
+         */
+        RateLimit create(long capacity, long resetInterval, TimeUnit resetUnit, RateLimit.Ticker ticker);
+    }
+
+    /**
+     * Rate limit factory.
+     */
+    private final Factory factory;
+
+    /**
+     * Rate limit capacity.
+     */
+    private final long capacity;
+
+    /**
+     * Rate limit reset interval in nano seconds.
+     */
+    private final long resetInterval;
+
+    /**
+     * Maximum wait in nano seconds.
+     */
+    private final long maxWait;
+
+    /**
+     * Current virtual time in nano seconds.
+     */
+    private long now;
+
+    /**
+     * Virtual clock.
+     */
+    private final RateLimit.Ticker clock = () -> now;
+
+    /**
+     * Creates a new simulator.
+     * @param factory Rate limit factory, the rate limits have to use the given time source.
+     * @param capacity Rate limit capacity.
+     * @param resetInterval Rate limit reset interval.
+     * @param resetUnit Rate limit reset interval unit.
+     * @param maxWait Maximum time a request waits before it is rejected.
+     * @param maxWaitUnit Maximum wait unit.
+     */
+    public LoadSimulator(Factory factory, long capacity, long resetInterval, TimeUnit resetUnit, long maxWait,
+            TimeUnit maxWaitUnit) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        if(resetInterval < 1) {
+            throw new IllegalArgumentException("resetInterval must be at least 1");
+        }
+        if(maxWait < 0) {
+            throw new IllegalArgumentException("maxWait must not be negative");
+        }
+        this.factory = factory;
+        this.capacity = capacity;
+        this.resetInterval = resetUnit.toNanos(resetInterval);
+        this.maxWait = maxWaitUnit.toNanos(maxWait);
+    }
+
+    /**
+     * Replays a trace through a new rate limit.
+     * @param trace Arrival trace.
+     * @return Returns the report.
+     */
+    public SimulationReport run(Trace trace) {
+        now = 0;
+        RateLimit rateLimit = factory.create(capacity, resetInterval, TimeUnit.NANOSECONDS, clock);
+        Deque<Long> waiting = new ArrayDeque<>();
+        long[] waits = new long[1024];
+        long[] grants = new long[1024];
+        long admitted = 0;
+        long requests = 0;
+        long arrival = trace.next();
+        while(true) {
+            while(arrival >= 0 && arrival <= now) {
+                waiting.add(arrival);
+                requests++;
+                arrival = trace.next();
+            }
+            while(!waiting.isEmpty() && now - waiting.peek() > maxWait) {
+                waiting.poll();
+            }
+            while(!waiting.isEmpty() && rateLimit.tryAcquire()) {
+                if(admitted == waits.length) {
+                    waits = Arrays.copyOf(waits, waits.length * 2);
+                    grants = Arrays.copyOf(grants, grants.length * 2);
+                }
+                waits[(int) admitted] = now - waiting.poll();
+                grants[(int) admitted++] = now;
+            }
+            if(waiting.isEmpty()) {
+                if(arrival < 0) {
+                    break;
+                }
+                now = arrival;
+                continue;
+            }
+            long next = Math.max(now + 1, rateLimit.getNextReset());
+            if(maxWait < Long.MAX_VALUE - waiting.peek()) {
+                next = Math.min(next, waiting.peek() + maxWait + 1);
+            }
+            if(arrival >= 0) {
+                next = Math.min(next, arrival);
+            }
+            now = next;
+        }
+        return new SimulationReport(requests, now, Arrays.copyOf(waits, (int) admitted),
+                getMaxBurst(grants, (int) admitted, resetInterval), capacity);
+    }
+
+    /**
+     * Gets the maximum amount of grants within any period of one reset interval.
+     * @param grants Ordered grant time stamps.
+     * @param length Amount of grants.
+     * @param resetInterval Reset interval in nano seconds.
+     * @return Returns the maximum burst.
+     */
+    static long getMaxBurst(long[] grants, int length, long resetInterval) {
+        long maxBurst = 0;
+        for(int start = 0, end = 0; end < length; end++) {
+            while(grants[end] - grants[start] >= resetInterval) {
+                start++;
+            }
+            maxBurst = Math.max(maxBurst, end - start + 1);
+        }
+        return maxBurst;
+    }
+
+    /**
+     * Runs a simulation from the command line and prints the report.
+     * Arguments: {@code <rate limit> <capacity> <reset interval ms> <max wait ms> <trace>}, where the rate limit is
+     * either a class name or a short name like {@code Concurrent} for {@link ConcurrentRateLimit}, and the trace is one
+     * of {@code poisson:<rate/s>:<duration s>[:<seed>]},
+     * {@code bursty:<burst rate/s>:<calm rate/s>:<burst ms>:<calm ms>:<duration s>[:<seed>]} or {@code csv:<file>}.
+     * @param args Command line arguments.
+     * @throws Exception if the rate limit could not be created or the trace could not be read.
+     */
+    public static void main(String[] args) throws Exception {
+        if(args.length != 5) {
+            System.err.println("usage: <rate limit> <capacity> <reset interval ms> <max wait ms> <trace>");
+            System.exit(1);
+        }
+        LoadSimulator simulator = new LoadSimulator(getFactory(args[0]), Long.parseLong(args[1]),
+                Long.parseLong(args[2]), TimeUnit.MILLISECONDS, Long.parseLong(args[3]), TimeUnit.MILLISECONDS);
+        System.out.print(simulator.run(getTrace(args[4])));
+    }
+
+    /**
+     * Gets the factory of a rate limit.
+     * Besides the built-in short names, any rate limit class with a {@code (long, long, TimeUnit, Yielder, Ticker)}
+     * constructor is supported.
+     * @param name Class name or short name.
+     * @return Returns the factory.
+     * @throws ReflectiveOperationException if the class or constructor does not exist.
+     */
+    static Factory getFactory(String name) throws ReflectiveOperationException {
+        String className = name.contains(".") ? name : LoadSimulator.class.getPackage().getName() + "." + name
+                + (name.endsWith("RateLimit") ? "" : "RateLimit");
+        Class<? extends RateLimit> type = Class.forName(className).asSubclass(RateLimit.class);
+        if(type == WarmingUpRateLimit.class) {
+            return (capacity, resetInterval, resetUnit, ticker) -> new WarmingUpRateLimit(capacity, resetInterval,
+                    resetUnit, WarmingUpRateLimit.DEFAULT_COLD_FACTOR,
+                    WarmingUpRateLimit.DEFAULT_WARMUP_RATES * resetInterval,
+                    WarmingUpRateLimit.DEFAULT_WARMUP_RATES * resetInterval, resetUnit, RateLimit.defaultYielder,
+                    ticker);
+        }
+        if(type == MultiWindowRateLimit.class) {
+            return (capacity, resetInterval, resetUnit, ticker) -> MultiWindowRateLimit.builder()
+                    .window(capacity, resetInterval, resetUnit)
+                    .ticker(ticker)
+                    .build();
+        }
+        Constructor<? extends RateLimit> constructor = type.getConstructor(long.class, long.class, TimeUnit.class,
+                RateLimit.Yielder.class, RateLimit.Ticker.class);
+        return (capacity, resetInterval, resetUnit, ticker) -> {
+            try {
+                return constructor.newInstance(capacity, resetInterval, resetUnit, RateLimit.defaultYielder, ticker);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    /**
+     * Parses a trace specification.
+     * @param spec Trace specification.
+     * @return Returns the trace.
+     * @throws IOException if the trace file could not be opened.
+     */
+    static Trace getTrace(String spec) throws IOException {
+        String[] parts = spec.split(":");
+        switch(parts[0]) {
+            case "poisson":
+                return Trace.poisson(Double.parseDouble(parts[1]), Long.parseLong(parts[2]), TimeUnit.SECONDS,
+                        parts.length > 3 ? Long.parseLong(parts[3]) : 0);
+            case "bursty":
+                return Trace.bursty(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]),
+                        Long.parseLong(parts[3]), Long.parseLong(parts[4]), Long.parseLong(parts[5]), TimeUnit.SECONDS,
+                        parts.length > 6 ? Long.parseLong(parts[6]) : 0);
+            case "csv":
+                return Trace.csv(Paths.get(spec.substring(4)));
+            default:
+                throw new IllegalArgumentException("unknown trace: " + spec);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.github.cap5lut.ratelimits;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of a {@link LoadSimulator} run.
+ */
+public class SimulationReport {
+    /**
+     * Amount of requests.
+     */
+    private final long requests;
+
+    /**
+     * Amount of admitted requests.
+     */
+    private final long admitted;
+
+    /**
+     * Simulated duration in nano seconds.
+     */
+    private final long duration;
+
+    /**
+     * Sorted wait times of the admitted requests in nano seconds.
+     */
+    private final long[] waits;
+
+    /**
+     * Maximum amount of admissions within any period of one reset interval.
+     */
+    private final long maxBurst;
+
+    /**
+     * Rate limit capacity.
+     */
+    private final long capacity;
+
+    /**
+     * Creates a new report.
+     * @param requests Amount of requests.
+     * @param duration Simulated duration in nano seconds.
+     * @param waits Wait times of the admitted requests in nano seconds.
+     * @param maxBurst Maximum amount of admissions within any period of one reset interval.
+     * @param capacity Rate limit capacity.
+     */
+    SimulationReport(long requests, long duration, long[] waits, long maxBurst, long capacity) {
+        this.requests = requests;
+        this.admitted = waits.length;
+        this.duration = duration;
+        this.waits = waits.clone();
+        this.maxBurst = maxBurst;
+        this.capacity = capacity;
+        Arrays.sort(this.waits);
+    }
+
+    /**
+     * Gets the amount of requests.
+     * @return Returns the amount of requests.
+     */
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Gets the amount of admitted requests.
+     * @return Returns the amount of admitted requests.
+     */
+    public long getAdmitted() {
+        return admitted;
+    }
+
+    /**
+     * Gets the share of admitted requests.
+     * @return Returns the admission ratio between zero and one.
+     */
+    public double getAdmissionRatio() {
+        return requests == 0 ? 1 : admitted / (double) requests;
+    }
+
+    /**
+     * Gets the admitted requests per second of simulated time.
+     * @return Returns the throughput.
+     */
+    public double getThroughput() {
+        return duration == 0 ? 0 : admitted / (duration / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Gets a wait time percentile of the admitted requests.
+     * @param percentile Percentile between zero and one hundred.
+     * @return Returns the wait time in nano seconds.
+     */
+    public long getWaitPercentile(double percentile) {
+        if(waits.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * waits.length) - 1;
+        return waits[Math.max(0, Math.min(waits.length - 1, index))];
+    }
+
+    /**
+     * Gets the maximum amount of admissions within any period of one reset interval.
+     * Fixed windows may admit up to twice their capacity around a window boundary.
+     * @return Returns the maximum burst.
+     */
+    public long getMaxBurst() {
+        return maxBurst;
+    }
+
+    /**
+     * Gets the maximum burst relative to the capacity.
+     * @return Returns the burst ratio.
+     */
+    public double getBurstRatio() {
+        return maxBurst / (double) capacity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "requests:        %d%n"
+                        + "admitted:        %d (%.2f%%)%n"
+                        + "throughput:      %.2f/s%n"
+                        + "wait p50:        %.3f ms%n"
+                        + "wait p90:        %.3f ms%n"
+                        + "wait p99:        %.3f ms%n"
+                        + "wait p99.9:      %.3f ms%n"
+                        + "wait max:        %.3f ms%n"
+                        + "max burst:       %d per reset interval (%.2fx capacity)%n",
+                requests, admitted, getAdmissionRatio() * 100, getThroughput(),
+                millis(getWaitPercentile(50)), millis(getWaitPercentile(90)), millis(getWaitPercentile(99)),
+                millis(getWaitPercentile(99.9)), millis(getWaitPercentile(100)), maxBurst, getBurstRatio());
+    }
+
+    /**
+     * Converts nano seconds to milli seconds.
+     * @param nanos Nano seconds.
+     * @return Returns the milli seconds.
+     */
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
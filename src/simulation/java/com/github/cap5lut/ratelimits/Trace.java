@@ -0,0 +1,124 @@
+package com.github.cap5lut.ratelimits;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Arrival trace, a sequence of requests ordered by their arrival time.
+ */
+@FunctionalInterface
+public interface Trace {
+    /**
+     * Gets the next arrival.
+     * @return Returns the arrival time stamp in nano seconds relative to the trace start, or {@code -1} at the end of
+     *         the trace.
+     */
+    long next();
+
+    /**
+     * Creates a trace of arrivals following a Poisson process.
+     * @param rate Mean arrivals per second.
+     * @param duration Trace duration.
+     * @param unit Trace duration unit.
+     * @param seed Random seed.
+     * @return Returns the trace.
+     */
+    static Trace poisson(double rate, long duration, TimeUnit unit, long seed) {
+        return bursty(rate, rate, Long.MAX_VALUE, 1, duration, unit, seed);
+    }
+
+    /**
+     * Creates a trace alternating between bursts and calm periods of exponentially distributed lengths, with Poisson
+     * arrivals within each period.
+     * @param burstRate Mean arrivals per second during bursts.
+     * @param calmRate Mean arrivals per second between bursts.
+     * @param burstLength Mean burst length in milli seconds.
+     * @param calmLength Mean calm period length in milli seconds.
+     * @param duration Trace duration.
+     * @param unit Trace duration unit.
+     * @param seed Random seed.
+     * @return Returns the trace.
+     */
+    static Trace bursty(double burstRate, double calmRate, long burstLength, long calmLength, long duration,
+            TimeUnit unit, long seed) {
+        Random random = new Random(seed);
+        long end = unit.toNanos(duration);
+        double burstNanos = TimeUnit.MILLISECONDS.toNanos(1) * (double) burstLength;
+        double calmNanos = TimeUnit.MILLISECONDS.toNanos(1) * (double) calmLength;
+        return new Trace() {
+            private double time;
+
+            private boolean burst = true;
+
+            private double periodEnd = exponential(burstNanos);
+
+            @Override
+            public long next() {
+                double rate;
+                double gap;
+                while(true) {
+                    rate = (burst ? burstRate : calmRate) / TimeUnit.SECONDS.toNanos(1);
+                    gap = rate > 0 ? exponential(1 / rate) : Double.POSITIVE_INFINITY;
+                    if(time + gap <= periodEnd) { // memoryless, so the arrival can be drawn again in the next period
+                        time += gap;
+                        return time < end ? (long) time : -1;
+                    }
+                    time = periodEnd;
+                    if(time >= end) {
+                        return -1;
+                    }
+                    burst = !burst;
+                    periodEnd = time + exponential(burst ? burstNanos : calmNanos);
+                }
+            }
+
+            private double exponential(double mean) {
+                return -Math.log(1 - random.nextDouble()) * mean;
+            }
+        };
+    }
+
+    /**
+     * Creates a trace of recorded arrivals.
+     * Each line holds the arrival time stamp in milli seconds, lines starting with {@code #} and lines not starting
+     * with a number are skipped. Time stamps are taken relative to the first arrival and must be ordered.
+     * @param file CSV file.
+     * @return Returns the trace.
+     * @throws IOException if the file could not be opened.
+     */
+    static Trace csv(Path file) throws IOException {
+        BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        return new Trace() {
+            private double start = Double.NaN;
+
+            @Override
+            public long next() {
+                try {
+                    String line;
+                    String column;
+                    while((line = reader.readLine()) != null) {
+                        column = line.split(",", 2)[0].trim();
+                        if(column.isEmpty() || !(Character.isDigit(column.charAt(0)) || column.charAt(0) == '.')) {
+                            continue;
+                        }
+                        double timestamp = Double.parseDouble(column);
+                        if(Double.isNaN(start)) {
+                            start = timestamp;
+                        }
+                        return (long) ((timestamp - start) * TimeUnit.MILLISECONDS.toNanos(1));
+                    }
+                    reader.close();
+                    return -1;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+}
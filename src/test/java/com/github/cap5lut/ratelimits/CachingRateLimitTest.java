@@ -0,0 +1,103 @@
+package com.github.cap5lut.ratelimits;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingRateLimitTest extends RateLimitTest {
+    CachingRateLimitTest() {
+        super((capacity, resetInterval, resetUnit) -> new CachingRateLimit(
+                new ConcurrentRateLimit(capacity, resetInterval, resetUnit), 2, Long.MAX_VALUE));
+    }
+
+    @Test
+    void servedFromCache() throws InterruptedException {
+        CachingRateLimit rateLimit = new CachingRateLimit(new ConcurrentRateLimit(100, 10, TimeUnit.SECONDS), 10, 100);
+        long rateID = rateLimit.acquireAndGetRateID();
+        assertEquals(90, rateLimit.getRemaining());
+        assertEquals(9, rateLimit.getCached());
+        for(int i = 0; i < 9; i++) {
+            assertEquals(rateID, rateLimit.acquireAndGetRateID());
+        }
+        assertEquals(90, rateLimit.getRemaining());
+        assertEquals(0, rateLimit.getCached());
+        rateLimit.acquire();
+        assertEquals(80, rateLimit.getRemaining());
+    }
+
+    @Test
+    void flush() throws InterruptedException {
+        CachingRateLimit rateLimit = new CachingRateLimit(new ConcurrentRateLimit(100, 10, TimeUnit.SECONDS), 10, 100);
+        rateLimit.acquire();
+        rateLimit.flush();
+        assertEquals(99, rateLimit.getRemaining());
+        assertEquals(0, rateLimit.getCached());
+    }
+
+    @Test
+    void maxStranded() throws InterruptedException {
+        CachingRateLimit rateLimit = new CachingRateLimit(new ConcurrentRateLimit(100, 10, TimeUnit.SECONDS), 10, 4);
+        rateLimit.acquire();
+        assertEquals(95, rateLimit.getRemaining());
+        Thread other = new Thread(() -> assertTrue(rateLimit.tryAcquire()));
+        other.start();
+        other.join();
+        assertEquals(94, rateLimit.getRemaining()); // stranded limit reached, acquired directly
+        assertEquals(4, rateLimit.getCached());
+    }
+
+    @Test
+    void expireWithRate() throws InterruptedException {
+        CachingRateLimit rateLimit = new CachingRateLimit(new ConcurrentRateLimit(10, 250, TimeUnit.MILLISECONDS), 5,
+                10);
+        long rateID = rateLimit.acquireAndGetRateID();
+        Thread.sleep(300);
+        long nextRateID = rateLimit.acquireAndGetRateID();
+        assertTrue(nextRateID > rateID);
+        assertEquals(5, rateLimit.getRemaining());
+    }
+
+    @Test
+    void reconfigureInvalidatesCaches() throws InterruptedException {
+        CachingRateLimit rateLimit = new CachingRateLimit(new ConcurrentRateLimit(100, 10, TimeUnit.SECONDS), 10, 100);
+        rateLimit.acquire();
+        rateLimit.reconfigure(100, 20, TimeUnit.SECONDS);
+        rateLimit.acquire(); // returns the leftovers and caches a new batch
+        assertEquals(89, rateLimit.getRemaining());
+    }
+
+    @Test
+    void neverExceedsCapacity() throws InterruptedException {
+        CachingRateLimit rateLimit = new CachingRateLimit(new ConcurrentRateLimit(1000, 10, TimeUnit.SECONDS), 16, 64);
+        AtomicLong granted = new AtomicLong();
+        Thread[] threads = new Thread[4];
+        for(int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for(int j = 0; j < 1000; j++) {
+                    if(rateLimit.tryAcquire()) {
+                        granted.incrementAndGet();
+                    }
+                }
+                rateLimit.flush();
+            });
+            threads[i].start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1000, granted.get() + rateLimit.getRemaining());
+        assertTrue(granted.get() <= 1000);
+    }
+
+    @Test
+    void invalidArguments() {
+        RateLimit rateLimit = new ConcurrentRateLimit(1, 10, TimeUnit.SECONDS);
+        assertThrows(IllegalArgumentException.class, () -> new CachingRateLimit(rateLimit, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new CachingRateLimit(rateLimit, 1, -1));
+    }
+}
@@ -1,7 +1,110 @@
 package com.github.cap5lut.ratelimits;
 
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.cap5lut.ratelimits.Measurement.measure;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 class ConcurrentRateLimitTest extends RateLimitTest {
     ConcurrentRateLimitTest() {
         super(ConcurrentRateLimit::new);
     }
-}
\ No newline at end of file
+
+    @Test
+    void reserve() {
+        ConcurrentRateLimit rateLimit = new ConcurrentRateLimit(2, 10, TimeUnit.SECONDS);
+        Reservation now = rateLimit.reserve();
+        assertEquals(rateLimit.getCurrentRateID(), now.getRateID());
+        assertTrue(now.getDelay() <= 0);
+        assertEquals(1, rateLimit.getRemaining());
+
+        Reservation later = rateLimit.reserve(2);
+        assertEquals(rateLimit.getCurrentRateID() + 1, later.getRateID());
+        assertEquals(rateLimit.getNextReset(), later.getValidAt());
+        assertEquals(1, rateLimit.getRemaining());
+
+        Reservation evenLater = rateLimit.reserve(2);
+        assertEquals(rateLimit.getCurrentRateID() + 2, evenLater.getRateID());
+        assertEquals(rateLimit.getNextReset() + rateLimit.getResetInterval(), evenLater.getValidAt());
+
+        assertThrows(IllegalArgumentException.class, () -> rateLimit.reserve(3));
+    }
+
+    @Test
+    void reserveBlocksAcquire() {
+        measure(() -> {
+            RateLimit rateLimit = new ConcurrentRateLimit(1, 250, TimeUnit.MILLISECONDS);
+            rateLimit.acquire();
+            rateLimit.reserve();
+            return rateLimit.acquire();
+        }).assertEquals(500, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void reserveHorizon() {
+        ConcurrentRateLimit rateLimit = new ConcurrentRateLimit(1, 10, TimeUnit.SECONDS)
+                .setReservationHorizon(15, TimeUnit.SECONDS);
+        assertEquals(TimeUnit.SECONDS.toNanos(15), rateLimit.getReservationHorizon());
+        rateLimit.reserve();
+        rateLimit.reserve();
+        assertNull(rateLimit.reserve());
+    }
+
+    @Test
+    void cancelReservation() {
+        ConcurrentRateLimit rateLimit = new ConcurrentRateLimit(1, 10, TimeUnit.SECONDS);
+        rateLimit.reserve();
+        Reservation next = rateLimit.reserve();
+        Reservation last = rateLimit.reserve();
+        assertTrue(next.cancel());
+        assertEquals(next.getRateID(), rateLimit.reserve().getRateID());
+        assertTrue(last.cancel());
+        assertEquals(last.getRateID(), rateLimit.reserve().getRateID());
+        assertFalse(rateLimit.cancel(last.getRateID() + 1));
+    }
+
+    @Test
+    void reservePartialRate() throws InterruptedException {
+        ConcurrentRateLimit rateLimit = new ConcurrentRateLimit(2, 250, TimeUnit.MILLISECONDS);
+        long rateID = rateLimit.acquireAndGetRateID(2);
+        assertEquals(rateID + 1, rateLimit.reserve().getRateID());
+        assertEquals(rateID + 2, rateLimit.reserve(2).getRateID());
+        Thread.sleep(300);
+        assertEquals(rateID + 1, rateLimit.getCurrentRateID());
+        assertEquals(1, rateLimit.getRemaining()); // the slot not fitting the second reservation is still available
+    }
+
+    @Test
+    void reconfigureReservedRates() throws InterruptedException {
+        AtomicLong now = new AtomicLong();
+        ConcurrentRateLimit rateLimit = new ConcurrentRateLimit(10, 1, TimeUnit.SECONDS, RateLimit.defaultYielder,
+                now::get);
+        rateLimit.acquireAndGetRateID(10);
+        Reservation shrunk = rateLimit.reserve(7);
+        Reservation grown = rateLimit.reserve(7);
+        assertEquals(1, shrunk.getRateID());
+        assertEquals(2, grown.getRateID());
+
+        rateLimit.reconfigure(5, 1, TimeUnit.SECONDS);
+        now.set(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1, rateLimit.getCurrentRateID());
+        assertEquals(0, rateLimit.getRemaining()); // reserved beyond the new capacity
+        assertTrue(shrunk.cancel());
+        assertEquals(5, rateLimit.getRemaining());
+
+        rateLimit.reconfigure(20, 1, TimeUnit.SECONDS);
+        rateLimit.acquireAndGetRateID(20);
+        assertEquals(2, rateLimit.reserve(13).getRateID()); // the remaining slots are offset to the new capacity
+        now.set(TimeUnit.SECONDS.toNanos(2));
+        assertEquals(0, rateLimit.getRemaining());
+        assertTrue(grown.cancel());
+        assertEquals(7, rateLimit.getRemaining());
+    }
+}
@@ -0,0 +1,141 @@
+package com.github.cap5lut.ratelimits;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static com.github.cap5lut.ratelimits.Measurement.measure;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CountMinKeyedRateLimitTest {
+
+    @Test
+    void dimensions() {
+        CountMinKeyedRateLimit<String> rateLimit = new CountMinKeyedRateLimit<>(10, 1, TimeUnit.SECONDS, 0.01, 0.01,
+                4, RateLimit.defaultYielder);
+        assertEquals(272, rateLimit.getWidth());
+        assertEquals(5, rateLimit.getDepth());
+    }
+
+    @Test
+    void tryAcquire() {
+        CountMinKeyedRateLimit<String> rateLimit = new CountMinKeyedRateLimit<>(3, 10, TimeUnit.SECONDS);
+        assertTrue(rateLimit.tryAcquire("a"));
+        assertTrue(rateLimit.tryAcquire("a"));
+        assertTrue(rateLimit.tryAcquire("a"));
+        assertFalse(rateLimit.tryAcquire("a"));
+        assertTrue(rateLimit.tryAcquire("b"));
+        assertEquals(3, rateLimit.estimate("a"));
+        assertEquals(1, rateLimit.estimate("b"));
+    }
+
+    @Test
+    void neverExceedsCapacity() {
+        CountMinKeyedRateLimit<Integer> rateLimit = new CountMinKeyedRateLimit<>(5, 10, TimeUnit.SECONDS, 0.1, 0.1,
+                2, RateLimit.defaultYielder);
+        for(int key = 0; key < 1000; key++) {
+            int granted = 0;
+            for(int i = 0; i < 10; i++) {
+                if(rateLimit.tryAcquire(key)) {
+                    granted++;
+                }
+            }
+            assertTrue(granted <= 5);
+        }
+    }
+
+    @Test
+    void neverExceedsCapacityConcurrently() throws InterruptedException {
+        List<CountMinKeyedRateLimit<String>> rateLimits = new ArrayList<>();
+        for(int round = 0; round < 2000; round++) {
+            rateLimits.add(new CountMinKeyedRateLimit<>(1, 1, TimeUnit.HOURS, 0.5, 0.2, 0,
+                    RateLimit.defaultYielder));
+        }
+        AtomicIntegerArray granted = new AtomicIntegerArray(rateLimits.size());
+        CyclicBarrier barrier = new CyclicBarrier(8);
+        Thread[] threads = new Thread[8];
+        for(int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    for(int round = 0; round < rateLimits.size(); round++) {
+                        barrier.await();
+                        if(rateLimits.get(round).tryAcquire("a")) {
+                            granted.incrementAndGet(round);
+                        }
+                    }
+                }
+                catch(InterruptedException | BrokenBarrierException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            threads[i].start();
+        }
+        for(Thread thread: threads) {
+            thread.join();
+        }
+        assertEquals(2, rateLimits.get(0).getDepth());
+        for(int round = 0; round < rateLimits.size(); round++) {
+            assertTrue(granted.get(round) <= 1, "round " + round + " granted " + granted.get(round));
+        }
+    }
+
+    @Test
+    void promote() {
+        CountMinKeyedRateLimit<String> rateLimit = new CountMinKeyedRateLimit<>(4, 10, TimeUnit.SECONDS, 0.01, 0.01,
+                1, RateLimit.defaultYielder);
+        rateLimit.tryAcquire("a");
+        assertNull(rateLimit.getHeavyHitter("a"));
+        rateLimit.tryAcquire("a");
+        RateLimit heavyHitter = rateLimit.getHeavyHitter("a");
+        assertNotNull(heavyHitter);
+        assertEquals(2, heavyHitter.getRemaining());
+        assertEquals(2, rateLimit.estimate("a"));
+
+        rateLimit.tryAcquire("a");
+        rateLimit.tryAcquire("a");
+        assertFalse(rateLimit.tryAcquire("a"));
+
+        rateLimit.tryAcquire("b");
+        rateLimit.tryAcquire("b");
+        assertNull(rateLimit.getHeavyHitter("b"));
+    }
+
+    @Test
+    void heavyHitterSharesRates() throws InterruptedException {
+        CountMinKeyedRateLimit<String> rateLimit = new CountMinKeyedRateLimit<>(2, 250, TimeUnit.MILLISECONDS, 0.01,
+                0.01, 1, RateLimit.defaultYielder);
+        assertTrue(rateLimit.tryAcquire("a"));
+        RateLimit heavyHitter = rateLimit.getHeavyHitter("a");
+        assertNotNull(heavyHitter);
+        assertEquals(rateLimit.getCurrentRateID(), heavyHitter.getCurrentRateID());
+        assertEquals(1, heavyHitter.getRemaining());
+        assertTrue(rateLimit.tryAcquire("a"));
+        assertFalse(rateLimit.tryAcquire("a"));
+        assertEquals(2, rateLimit.estimate("a"));
+
+        Thread.sleep(300);
+        assertEquals(2, heavyHitter.getRemaining());
+        assertTrue(rateLimit.tryAcquire("a"));
+        assertEquals(1, rateLimit.estimate("a"));
+        assertEquals(1, heavyHitter.getRemaining());
+    }
+
+    @Test
+    void acquire() {
+        measure(() -> {
+            CountMinKeyedRateLimit<String> rateLimit = new CountMinKeyedRateLimit<>(1, 250, TimeUnit.MILLISECONDS);
+            rateLimit.acquire("a");
+            rateLimit.acquire("a");
+            return null;
+        }).assertEquals(250, TimeUnit.MILLISECONDS);
+    }
+}
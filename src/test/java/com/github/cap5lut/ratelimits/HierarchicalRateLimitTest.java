@@ -0,0 +1,147 @@
+package com.github.cap5lut.ratelimits;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.cap5lut.ratelimits.Measurement.measure;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HierarchicalRateLimitTest extends RateLimitTest {
+    HierarchicalRateLimitTest() {
+        super(HierarchicalRateLimit::new);
+    }
+
+    @Test
+    void createChild() {
+        HierarchicalRateLimit root = new HierarchicalRateLimit(5, 10, TimeUnit.SECONDS);
+        HierarchicalRateLimit child = root.createChild(2, 3);
+        assertSame(root, child.getParent());
+        assertNull(root.getParent());
+        assertTrue(root.getChildren().contains(child));
+        assertEquals(2, child.getCapacity());
+        assertEquals(3, child.getCeiling());
+        assertEquals(root.getResetInterval(), child.getResetInterval());
+        assertThrows(IllegalArgumentException.class, () -> root.createChild(2, 1));
+    }
+
+    @Test
+    void rejectOvercommit() throws InterruptedException {
+        HierarchicalRateLimit root = new HierarchicalRateLimit(5, 10, TimeUnit.SECONDS);
+        HierarchicalRateLimit guild = root.createChild(2, 5);
+        root.createChild(2, 5);
+        assertThrows(IllegalArgumentException.class, () -> root.createChild(2, 5));
+        assertThrows(IllegalArgumentException.class, () -> guild.reconfigure(4, 10, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> root.reconfigure(3, 10, TimeUnit.SECONDS));
+        assertEquals(2, guild.getCapacity());
+        assertEquals(5, root.getCapacity());
+
+        assertTrue(root.tryAcquire()); // one slot is left for direct acquisitions and borrowing
+        guild.remove();
+        HierarchicalRateLimit other = root.createChild(3, 5);
+        assertEquals(3, other.getRemaining());
+    }
+
+    @Test
+    void acquireDeductsAncestors() throws InterruptedException {
+        HierarchicalRateLimit root = new HierarchicalRateLimit(5, 10, TimeUnit.SECONDS);
+        HierarchicalRateLimit guild = root.createChild(3);
+        HierarchicalRateLimit channel = guild.createChild(2);
+        channel.acquire();
+        assertEquals(1, channel.getRemaining());
+        assertEquals(1, guild.getRemaining()); // one slot is still guaranteed to the channel
+        assertEquals(2, root.getRemaining());
+    }
+
+    @Test
+    void acquireLimitedByAncestors() {
+        measure(() -> {
+            HierarchicalRateLimit root = new HierarchicalRateLimit(1, 250, TimeUnit.MILLISECONDS);
+            HierarchicalRateLimit child = root.createChild(1, 5);
+            child.acquire();
+            assertEquals(0, child.getRemaining());
+            return child.acquire();
+        }).assertEquals(250, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void borrow() throws InterruptedException {
+        HierarchicalRateLimit root = new HierarchicalRateLimit(4, 10, TimeUnit.SECONDS);
+        HierarchicalRateLimit busy = root.createChild(1, 3);
+        HierarchicalRateLimit idle = root.createChild(1);
+        busy.acquire();
+        busy.acquire();
+        busy.acquire();
+        assertEquals(0, busy.getRemaining());
+        assertEquals(1, idle.getRemaining());
+        assertEquals(0, root.getRemaining());
+    }
+
+    @Test
+    void borrowKeepsGuarantees() throws InterruptedException {
+        HierarchicalRateLimit root = new HierarchicalRateLimit(3, 10, TimeUnit.SECONDS);
+        HierarchicalRateLimit busy = root.createChild(1, 3);
+        HierarchicalRateLimit idle = root.createChild(2);
+        busy.acquire();
+        assertEquals(0, busy.getRemaining());
+        assertFalse(busy.tryAcquire()); // would take a slot guaranteed to the idle child
+        assertEquals(2, idle.getRemaining());
+
+        idle.remove();
+        assertEquals(2, busy.getRemaining()); // nothing is guaranteed to removed children
+    }
+
+    @Test
+    void cancelReleasesAncestors() throws InterruptedException {
+        HierarchicalRateLimit root = new HierarchicalRateLimit(2, 10, TimeUnit.SECONDS);
+        HierarchicalRateLimit child = root.createChild(1);
+        RateLimitSlot slot = child.acquire();
+        assertEquals(1, root.getRemaining());
+        slot.cancel();
+        assertEquals(1, child.getRemaining());
+        assertEquals(1, root.getRemaining());
+    }
+
+    @Test
+    void reconfigureChild() throws InterruptedException {
+        HierarchicalRateLimit root = new HierarchicalRateLimit(10, 10, TimeUnit.SECONDS);
+        HierarchicalRateLimit child = root.createChild(2, 4);
+        long rateID = child.acquireAndGetRateID(2);
+        child.reconfigure(1, 10, TimeUnit.SECONDS);
+        assertEquals(1, child.getCapacity());
+        assertEquals(2, child.getCeiling());
+        assertEquals(1, child.getRemaining());
+        assertTrue(child.cancel(rateID, 2));
+        assertEquals(2, child.getRemaining());
+        assertEquals(9, root.getRemaining());
+        assertThrows(IllegalArgumentException.class, () -> child.reconfigure(1, 1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void remove() {
+        HierarchicalRateLimit root = new HierarchicalRateLimit(2, 10, TimeUnit.SECONDS);
+        HierarchicalRateLimit child = root.createChild(1);
+        HierarchicalRateLimit grandChild = child.createChild(1);
+        child.remove();
+        assertTrue(child.isRemoved());
+        assertTrue(grandChild.isRemoved());
+        assertFalse(root.getChildren().contains(child));
+        assertThrows(IllegalStateException.class, grandChild::acquire);
+        assertThrows(IllegalStateException.class, () -> child.createChild(1));
+    }
+
+    @Test
+    void reconfigureRemoved() {
+        HierarchicalRateLimit root = new HierarchicalRateLimit(10, 10, TimeUnit.SECONDS);
+        HierarchicalRateLimit child = root.createChild(5);
+        child.remove();
+        assertThrows(IllegalStateException.class, () -> child.reconfigure(8, 10, TimeUnit.SECONDS));
+        assertEquals(5, child.getCapacity());
+        assertEquals(10, root.getRemaining()); // nothing is guaranteed to the removed child
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.cap5lut.ratelimits;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadSheddingRateLimitTest extends RateLimitTest {
+    LoadSheddingRateLimitTest() {
+        super((capacity, resetInterval, resetUnit) -> new LoadSheddingRateLimit(
+                new ConcurrentRateLimit(capacity, resetInterval, resetUnit), Integer.MAX_VALUE, Long.MAX_VALUE,
+                TimeUnit.NANOSECONDS, LoadSheddingRateLimit.OverloadPolicy.REJECT));
+    }
+
+    @Test
+    void rejectMaxWaiters() throws InterruptedException {
+        LoadSheddingRateLimit rateLimit = new LoadSheddingRateLimit(new ConcurrentRateLimit(1, 10, TimeUnit.SECONDS),
+                1, 1, TimeUnit.HOURS, LoadSheddingRateLimit.OverloadPolicy.REJECT);
+        rateLimit.acquire();
+        Thread waiter = startWaiter(rateLimit, new AtomicReference<>());
+        awaitQueueDepth(rateLimit, 1);
+
+        assertThrows(RejectedExecutionException.class, rateLimit::acquire);
+        assertEquals(1, rateLimit.getRejected());
+        assertEquals(1, rateLimit.getQueueDepth());
+
+        waiter.interrupt();
+        waiter.join();
+        assertEquals(0, rateLimit.getQueueDepth());
+    }
+
+    @Test
+    void rejectMaxWait() throws InterruptedException {
+        LoadSheddingRateLimit rateLimit = new LoadSheddingRateLimit(new ConcurrentRateLimit(1, 10, TimeUnit.SECONDS),
+                Integer.MAX_VALUE, 1, TimeUnit.SECONDS, LoadSheddingRateLimit.OverloadPolicy.REJECT);
+        assertEquals(0, rateLimit.getExpectedWait(1));
+        rateLimit.acquire();
+        assertTrue(rateLimit.getExpectedWait(1) > TimeUnit.SECONDS.toNanos(1));
+        assertThrows(RejectedExecutionException.class, rateLimit::acquire);
+        assertEquals(1, rateLimit.getRejected());
+        assertEquals(0, rateLimit.getQueueDepth());
+    }
+
+    @Test
+    void dropOldest() throws InterruptedException {
+        LoadSheddingRateLimit rateLimit = new LoadSheddingRateLimit(new ConcurrentRateLimit(1, 10, TimeUnit.SECONDS),
+                1, 1, TimeUnit.HOURS, LoadSheddingRateLimit.OverloadPolicy.DROP_OLDEST);
+        rateLimit.acquire();
+        AtomicReference<Throwable> oldestError = new AtomicReference<>();
+        Thread oldest = startWaiter(rateLimit, oldestError);
+        awaitQueueDepth(rateLimit, 1);
+
+        Thread newest = startWaiter(rateLimit, new AtomicReference<>());
+        oldest.join();
+        assertTrue(oldestError.get() instanceof RejectedExecutionException);
+        assertEquals(1, rateLimit.getDropped());
+        awaitQueueDepth(rateLimit, 1);
+
+        newest.interrupt();
+        newest.join();
+    }
+
+    @Test
+    void invalidSlots() throws InterruptedException {
+        LoadSheddingRateLimit rateLimit = new LoadSheddingRateLimit(new ConcurrentRateLimit(2, 10, TimeUnit.SECONDS),
+                Integer.MAX_VALUE, 1, TimeUnit.HOURS, LoadSheddingRateLimit.OverloadPolicy.REJECT);
+        assertThrows(IllegalArgumentException.class, () -> rateLimit.acquireAndGetRateID(3));
+        rateLimit.acquireAndGetRateID(2);
+        Thread waiter = startWaiter(rateLimit, new AtomicReference<>());
+        awaitQueueDepth(rateLimit, 1);
+
+        assertThrows(IllegalArgumentException.class, () -> rateLimit.acquireAndGetRateID(0));
+        assertThrows(IllegalArgumentException.class, () -> rateLimit.acquireAndGetRateID(3));
+        assertEquals(1, rateLimit.getQueueDepth());
+
+        waiter.interrupt();
+        waiter.join();
+        assertEquals(0, rateLimit.getQueueDepth());
+    }
+
+    @Test
+    void failingHeadLeavesQueue() throws InterruptedException {
+        LoadSheddingRateLimit rateLimit = new LoadSheddingRateLimit(new ConcurrentRateLimit(2, 10, TimeUnit.SECONDS),
+                Integer.MAX_VALUE, 1, TimeUnit.HOURS, LoadSheddingRateLimit.OverloadPolicy.REJECT);
+        rateLimit.acquireAndGetRateID(2);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread waiter = startWaiter(rateLimit, 2, error);
+        awaitQueueDepth(rateLimit, 1);
+
+        rateLimit.reconfigure(1, 10, TimeUnit.SECONDS);
+        waiter.join();
+        assertTrue(error.get() instanceof IllegalArgumentException);
+        assertEquals(0, rateLimit.getQueueDepth());
+        assertEquals(0, rateLimit.getQueuedSlots());
+    }
+
+    private static Thread startWaiter(RateLimit rateLimit, AtomicReference<Throwable> error) {
+        return startWaiter(rateLimit, 1, error);
+    }
+
+    private static Thread startWaiter(RateLimit rateLimit, long slots, AtomicReference<Throwable> error) {
+        Thread waiter = new Thread(() -> {
+            try {
+                rateLimit.acquireAndGetRateID(slots);
+            }
+            catch(InterruptedException | RuntimeException e) {
+                error.set(e);
+            }
+        });
+        waiter.start();
+        return waiter;
+    }
+
+    private static void awaitQueueDepth(LoadSheddingRateLimit rateLimit, int depth) throws InterruptedException {
+        while(rateLimit.getQueueDepth() != depth) {
+            Thread.sleep(1);
+        }
+    }
+}
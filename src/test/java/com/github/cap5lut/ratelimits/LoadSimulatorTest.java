@@ -0,0 +1,115 @@
+package com.github.cap5lut.ratelimits;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LoadSimulatorTest {
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private static final LoadSimulator.Factory FACTORY = (capacity, resetInterval, resetUnit, ticker) ->
+            new ConcurrentRateLimit(capacity, resetInterval, resetUnit, RateLimit.defaultYielder, ticker);
+
+    @Test
+    void waitsForResets() {
+        LoadSimulator simulator = new LoadSimulator(FACTORY, 2, 100, TimeUnit.MILLISECONDS, 1, TimeUnit.SECONDS);
+        SimulationReport report = simulator.run(trace(0, 0, 0, 0, 0));
+        assertEquals(5, report.getRequests());
+        assertEquals(5, report.getAdmitted());
+        assertEquals(0, report.getWaitPercentile(40));
+        assertEquals(INTERVAL, report.getWaitPercentile(80));
+        assertEquals(2 * INTERVAL, report.getWaitPercentile(100));
+        assertEquals(2, report.getMaxBurst());
+        assertEquals(25, report.getThroughput(), 0.001); // 5 admissions within 200 ms
+    }
+
+    @Test
+    void rejectsAfterMaxWait() {
+        LoadSimulator simulator = new LoadSimulator(FACTORY, 2, 100, TimeUnit.MILLISECONDS, 50,
+                TimeUnit.MILLISECONDS);
+        SimulationReport report = simulator.run(trace(0, 0, 0, 0, 0, INTERVAL));
+        assertEquals(6, report.getRequests());
+        assertEquals(3, report.getAdmitted());
+        assertEquals(0.5, report.getAdmissionRatio(), 0.001);
+        assertEquals(0, report.getWaitPercentile(100));
+    }
+
+    @Test
+    void burstAroundWindowBoundary() {
+        LoadSimulator simulator = new LoadSimulator(FACTORY, 2, 100, TimeUnit.MILLISECONDS, 0,
+                TimeUnit.MILLISECONDS);
+        long beforeReset = INTERVAL - 1;
+        SimulationReport report = simulator.run(trace(beforeReset, beforeReset, INTERVAL, INTERVAL, INTERVAL));
+        assertEquals(4, report.getAdmitted());
+        assertEquals(4, report.getMaxBurst());
+        assertEquals(2, report.getBurstRatio(), 0.001);
+    }
+
+    @Test
+    void repeatable() {
+        LoadSimulator simulator = new LoadSimulator(FACTORY, 10, 100, TimeUnit.MILLISECONDS, 50,
+                TimeUnit.MILLISECONDS);
+        SimulationReport first = simulator.run(Trace.poisson(150, 10, TimeUnit.SECONDS, 7));
+        SimulationReport second = simulator.run(Trace.poisson(150, 10, TimeUnit.SECONDS, 7));
+        assertEquals(first.getRequests(), second.getRequests());
+        assertEquals(first.getAdmitted(), second.getAdmitted());
+        assertEquals(first.getWaitPercentile(99), second.getWaitPercentile(99));
+        assertEquals(first.getMaxBurst(), second.getMaxBurst());
+    }
+
+    @Test
+    void getMaxBurst() {
+        long[] grants = {0, 10, 20, 100, 105, 300};
+        assertEquals(4, LoadSimulator.getMaxBurst(grants, grants.length, 100));
+        assertEquals(3, LoadSimulator.getMaxBurst(grants, 3, 100));
+        assertEquals(1, LoadSimulator.getMaxBurst(grants, grants.length, 1));
+        assertEquals(0, LoadSimulator.getMaxBurst(grants, 0, 100));
+    }
+
+    @Test
+    void getFactory() throws ReflectiveOperationException {
+        RateLimit.Ticker ticker = () -> 1000;
+        for(String name: new String[] {"Concurrent", "WarmingUp", "MultiWindow", "HierarchicalRateLimit",
+                ConcurrentRateLimit.class.getName()}) {
+            RateLimit rateLimit = LoadSimulator.getFactory(name).create(1, 100, TimeUnit.NANOSECONDS, ticker);
+            assertEquals(1100, rateLimit.getNextReset(), name);
+            assertEquals(ticker, rateLimit.getTicker(), name);
+        }
+        assertThrows(ClassNotFoundException.class, () -> LoadSimulator.getFactory("Unknown"));
+    }
+
+    @Test
+    void getTrace() throws IOException {
+        Trace parsed = LoadSimulator.getTrace("poisson:100:1:3");
+        Trace expected = Trace.poisson(100, 1, TimeUnit.SECONDS, 3);
+        long arrival;
+        do {
+            arrival = expected.next();
+            assertEquals(arrival, parsed.next());
+        } while(arrival >= 0);
+
+        parsed = LoadSimulator.getTrace("bursty:100:10:50:200:1");
+        expected = Trace.bursty(100, 10, 50, 200, 1, TimeUnit.SECONDS, 0);
+        do {
+            arrival = expected.next();
+            assertEquals(arrival, parsed.next());
+        } while(arrival >= 0);
+
+        assertThrows(IllegalArgumentException.class, () -> LoadSimulator.getTrace("uniform:100:1"));
+    }
+
+    private static Trace trace(long... arrivals) {
+        return new Trace() {
+            private int index;
+
+            @Override
+            public long next() {
+                return index < arrivals.length ? arrivals[index++] : -1;
+            }
+        };
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.cap5lut.ratelimits;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.cap5lut.ratelimits.Measurement.measure;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultiWindowRateLimitTest extends RateLimitTest {
+    MultiWindowRateLimitTest() {
+        super(MultiWindowRateLimit::new, Operation.RECONFIGURE);
+    }
+
+    @Test
+    void bindingWindow() throws InterruptedException {
+        MultiWindowRateLimit rateLimit = MultiWindowRateLimit.builder()
+                .window(3, 1500, TimeUnit.MILLISECONDS)
+                .window(2, 250, TimeUnit.MILLISECONDS)
+                .build();
+        assertEquals(2, rateLimit.getWindowCount());
+        rateLimit.acquireAndGetRateID(2);
+        assertFalse(rateLimit.tryAcquire());
+        assertEquals(0, rateLimit.getBindingWindow());
+        assertEquals(2, rateLimit.getCapacity());
+
+        rateLimit.acquire();
+        assertEquals(0, rateLimit.getRemaining());
+        assertEquals(1, rateLimit.getBindingWindow());
+        assertEquals(3, rateLimit.getCapacity());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1500), rateLimit.getResetInterval());
+        assertTrue(rateLimit.getNextReset() - System.nanoTime() > TimeUnit.MILLISECONDS.toNanos(1000));
+    }
+
+    @Test
+    void acquireLimitedByLongestWindow() {
+        measure(() -> {
+            RateLimit rateLimit = MultiWindowRateLimit.builder()
+                    .window(2, 250, TimeUnit.MILLISECONDS)
+                    .window(2, 750, TimeUnit.MILLISECONDS)
+                    .build();
+            rateLimit.acquireAndGetRateID(2);
+            return rateLimit.acquire();
+        }).assertEquals(750, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void cancelLongerWindows() throws InterruptedException {
+        MultiWindowRateLimit rateLimit = MultiWindowRateLimit.builder()
+                .window(1, 250, TimeUnit.MILLISECONDS)
+                .window(2, 10, TimeUnit.SECONDS)
+                .build();
+        long rateID = rateLimit.acquireAndGetRateID();
+        rateLimit.acquire();
+        assertEquals(0, rateLimit.getRemaining());
+        assertTrue(rateLimit.cancel(rateID));
+        assertEquals(0, rateLimit.getBindingWindow());
+        rateLimit.acquire(); // would block for 10 seconds without the cancelled slot
+    }
+
+    @Test
+    void invalidWindows() {
+        assertThrows(IllegalArgumentException.class, () -> MultiWindowRateLimit.builder().build());
+        assertThrows(IllegalArgumentException.class, () -> MultiWindowRateLimit.builder()
+                .window(1, 2, TimeUnit.SECONDS)
+                .window(1, 3, TimeUnit.SECONDS)
+                .build());
+        assertThrows(IllegalArgumentException.class, () -> MultiWindowRateLimit.builder()
+                .window(1L << 40, 1, TimeUnit.SECONDS)
+                .window(1L << 20, 1, TimeUnit.MINUTES)
+                .build());
+    }
+}
@@ -0,0 +1,119 @@
+package com.github.cap5lut.ratelimits;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriorityRateLimitTest extends RateLimitTest {
+    PriorityRateLimitTest() {
+        super((capacity, resetInterval, resetUnit) -> new PriorityRateLimit(
+                new ConcurrentRateLimit(capacity, resetInterval, resetUnit)));
+    }
+
+    @Test
+    void higherPriorityFirst() throws InterruptedException {
+        PriorityRateLimit rateLimit = new PriorityRateLimit(new ConcurrentRateLimit(1, 300, TimeUnit.MILLISECONDS));
+        rateLimit.acquire();
+        List<Integer> granted = new CopyOnWriteArrayList<>();
+        Thread low = startWaiter(rateLimit.withPriority(1), 1, granted);
+        awaitQueueDepth(rateLimit, 1);
+        Thread high = startWaiter(rateLimit.withPriority(2), 2, granted);
+        awaitQueueDepth(rateLimit, 2);
+
+        low.join();
+        high.join();
+        assertEquals(2, (int) granted.get(0));
+        assertEquals(1, (int) granted.get(1));
+    }
+
+    @Test
+    void reservedShare() throws InterruptedException {
+        PriorityRateLimit rateLimit = new PriorityRateLimit(new ConcurrentRateLimit(2, 300, TimeUnit.MILLISECONDS),
+                0.5, RateLimit.defaultYielder);
+        rateLimit.acquireAndGetRateID(2);
+        List<Integer> granted = new CopyOnWriteArrayList<>();
+        Thread low = startWaiter(rateLimit.withPriority(1), 1, granted);
+        awaitQueueDepth(rateLimit, 1);
+        Thread high1 = startWaiter(rateLimit.withPriority(2), 2, granted);
+        awaitQueueDepth(rateLimit, 2);
+        Thread high2 = startWaiter(rateLimit.withPriority(2), 2, granted);
+        awaitQueueDepth(rateLimit, 3);
+
+        low.join();
+        high1.join();
+        high2.join();
+        assertEquals(3, granted.get(0) + granted.get(1)); // low and one high in the same rate
+        assertEquals(2, (int) granted.get(2));
+    }
+
+    @Test
+    void rateLimitedWithPriority() throws InterruptedException {
+        PriorityRateLimit rateLimit = new PriorityRateLimit(new ConcurrentRateLimit(1, 10, TimeUnit.SECONDS));
+        RateLimited<Object> limited = rateLimit.withPriority(5).limit(new Object());
+        assertNotNull(limited.acquire());
+        assertEquals(0, rateLimit.getRemaining());
+    }
+
+    @Test
+    void invalidSlots() {
+        PriorityRateLimit rateLimit = new PriorityRateLimit(new ConcurrentRateLimit(2, 10, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> rateLimit.acquireAndGetRateID(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> rateLimit.acquireAndGetRateID(3, 1));
+        assertEquals(0, rateLimit.getQueueDepth());
+    }
+
+    @Test
+    void oversizedWaiterFailsAlone() throws InterruptedException {
+        PriorityRateLimit rateLimit = new PriorityRateLimit(new ConcurrentRateLimit(2, 300, TimeUnit.MILLISECONDS));
+        rateLimit.acquireAndGetRateID(2);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread oversized = new Thread(() -> {
+            try {
+                rateLimit.withPriority(2).acquireAndGetRateID(2);
+            }
+            catch(InterruptedException | IllegalArgumentException e) {
+                failure.set(e);
+            }
+        });
+        oversized.start();
+        awaitQueueDepth(rateLimit, 1);
+        List<Integer> granted = new CopyOnWriteArrayList<>();
+        Thread waiter = startWaiter(rateLimit.withPriority(1), 1, granted);
+        awaitQueueDepth(rateLimit, 2);
+        rateLimit.reconfigure(1, 300, TimeUnit.MILLISECONDS);
+
+        oversized.join();
+        waiter.join();
+        assertTrue(failure.get() instanceof IllegalArgumentException);
+        assertEquals(1, (int) granted.get(0));
+        assertEquals(0, rateLimit.getQueueDepth());
+    }
+
+    private static Thread startWaiter(RateLimit rateLimit, int id, List<Integer> granted) {
+        Thread waiter = new Thread(() -> {
+            try {
+                rateLimit.acquire();
+                granted.add(id);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        return waiter;
+    }
+
+    private static void awaitQueueDepth(PriorityRateLimit rateLimit, int depth) throws InterruptedException {
+        while(rateLimit.getQueueDepth() != depth) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -2,18 +2,33 @@ package com.github.cap5lut.ratelimits;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.github.cap5lut.ratelimits.Measurement.measure;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
 
 abstract class RateLimitTest {
+    enum Operation {
+        RECONFIGURE
+    }
+
     private final RateLimit.Factory factory;
 
-    RateLimitTest(RateLimit.Factory factory) {
+    private final Set<Operation> unsupported;
+
+    RateLimitTest(RateLimit.Factory factory, Operation... unsupported) {
         this.factory = factory;
+        this.unsupported = unsupported.length == 0 ? EnumSet.noneOf(Operation.class)
+                : EnumSet.copyOf(Arrays.asList(unsupported));
     }
 
     @Test
@@ -48,12 +63,50 @@ abstract class RateLimitTest {
         }).assertEquals(250, TimeUnit.MILLISECONDS);
     }
 
+    @Test
+    void acquireMultiple() {
+        measure(() -> {
+            RateLimit rateLimit = factory.create(3, 250, TimeUnit.MILLISECONDS);
+            rateLimit.acquireAndGetRateID(2);
+            assertEquals(1, rateLimit.getRemaining());
+            return rateLimit.acquireAndGetRateID(2);
+        }).assertEquals(250, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void defaultAcquireMultiple() {
+        measure(() -> {
+            RateLimit rateLimit = delegate(factory.create(3, 250, TimeUnit.MILLISECONDS));
+            rateLimit.acquireAndGetRateID(2);
+            long rateID = rateLimit.acquireAndGetRateID(2);
+            assertEquals(rateLimit.getCurrentRateID(), rateID);
+            return rateID;
+        }).assertEquals(250, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void cancelMultiple() throws InterruptedException {
+        RateLimit rateLimit = factory.create(3, 10, TimeUnit.SECONDS);
+        long rateID = rateLimit.acquireAndGetRateID(3);
+        assertEquals(0, rateLimit.getRemaining());
+        assertTrue(rateLimit.cancel(rateID, 2));
+        assertEquals(2, rateLimit.getRemaining());
+    }
+
     @Test
     void acquireAndGetRateID() throws InterruptedException {
         RateLimit rateLimit = factory.create(1, 10, TimeUnit.SECONDS);
         assertEquals(rateLimit.getCurrentRateID(), rateLimit.acquireAndGetRateID());
     }
 
+    @Test
+    void tryAcquire() {
+        RateLimit rateLimit = factory.create(2, 10, TimeUnit.SECONDS);
+        assertEquals(rateLimit.getCurrentRateID(), rateLimit.tryAcquireAndGetRateID(2));
+        assertFalse(rateLimit.tryAcquire());
+        assertEquals(-1, rateLimit.tryAcquireAndGetRateID(1));
+    }
+
     @Test
     void cancel() throws InterruptedException {
         RateLimit rateLimit = factory.create(1, 10, TimeUnit.SECONDS);
@@ -63,6 +116,45 @@ abstract class RateLimitTest {
         assertEquals(1, rateLimit.getRemaining());
     }
 
+    @Test
+    void reconfigure() throws InterruptedException {
+        RateLimit rateLimit = factory.create(4, 10, TimeUnit.SECONDS);
+        if(unsupported.contains(Operation.RECONFIGURE)) {
+            assertThrows(UnsupportedOperationException.class, () -> rateLimit.reconfigure(8, 20, TimeUnit.SECONDS));
+            return;
+        }
+        long rateID = rateLimit.acquireAndGetRateID(2);
+        rateLimit.reconfigure(8, 20, TimeUnit.SECONDS);
+        assertEquals(8, rateLimit.getCapacity());
+        assertEquals(TimeUnit.SECONDS.toNanos(20), rateLimit.getResetInterval());
+        assertEquals(rateID, rateLimit.getCurrentRateID());
+        assertEquals(4, rateLimit.getRemaining());
+        assertTrue(rateLimit.cancel(rateID, 2));
+        assertEquals(6, rateLimit.getRemaining());
+    }
+
+    @Test
+    void reconfigureWakesWaiters() {
+        assumeFalse(unsupported.contains(Operation.RECONFIGURE), "reconfiguration is not supported");
+        measure(() -> {
+            RateLimit rateLimit = factory.create(1, 10, TimeUnit.SECONDS);
+            rateLimit.acquire();
+            Thread reconfigurer = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                }
+                catch(InterruptedException e) {
+                    return;
+                }
+                rateLimit.reconfigure(1, 250, TimeUnit.MILLISECONDS);
+            });
+            reconfigurer.start();
+            rateLimit.acquire();
+            reconfigurer.join();
+            return null;
+        }).assertEquals(250, TimeUnit.MILLISECONDS);
+    }
+
     @Test
     void getCapacity() {
         assertEquals(1, factory.create(1, 10, TimeUnit.SECONDS).getCapacity());
@@ -102,4 +194,48 @@ abstract class RateLimitTest {
         assertEquals(TimeUnit.SECONDS.toNanos(10), factory.create(1, 10, TimeUnit.SECONDS).getResetInterval());
         assertEquals(TimeUnit.MILLISECONDS.toNanos(10), factory.create(1, 10, TimeUnit.MILLISECONDS).getResetInterval());
     }
-}
\ No newline at end of file
+
+    private static RateLimit delegate(RateLimit rateLimit) {
+        return new RateLimit() {
+            @Override
+            public long acquireAndGetRateID() throws InterruptedException {
+                return rateLimit.acquireAndGetRateID();
+            }
+
+            @Override
+            public long tryAcquireAndGetRateID(long slots) {
+                return rateLimit.tryAcquireAndGetRateID(slots);
+            }
+
+            @Override
+            public boolean cancel(long rateID) {
+                return rateLimit.cancel(rateID);
+            }
+
+            @Override
+            public long getCapacity() {
+                return rateLimit.getCapacity();
+            }
+
+            @Override
+            public long getNextReset() {
+                return rateLimit.getNextReset();
+            }
+
+            @Override
+            public long getRemaining() {
+                return rateLimit.getRemaining();
+            }
+
+            @Override
+            public long getCurrentRateID() {
+                return rateLimit.getCurrentRateID();
+            }
+
+            @Override
+            public long getResetInterval() {
+                return rateLimit.getResetInterval();
+            }
+        };
+    }
+}
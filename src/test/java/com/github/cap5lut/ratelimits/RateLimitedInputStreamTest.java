@@ -0,0 +1,55 @@
+package com.github.cap5lut.ratelimits;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.cap5lut.ratelimits.Measurement.measure;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RateLimitedInputStreamTest {
+
+    @Test
+    void read() {
+        measure(() -> {
+            RateLimit rateLimit = new ConcurrentRateLimit(4, 250, TimeUnit.MILLISECONDS);
+            InputStream in = new RateLimitedInputStream(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6}), rateLimit);
+            byte[] buffer = new byte[6];
+            assertEquals(4, in.read(buffer));
+            assertEquals(5, in.read());
+            assertEquals(1, in.read(buffer, 5, 1));
+            assertArrayEquals(new byte[] {1, 2, 3, 4, 0, 6}, buffer);
+            return null;
+        }).assertEquals(250, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void readReturnsUnused() throws Exception {
+        RateLimit rateLimit = new ConcurrentRateLimit(10, 10, TimeUnit.SECONDS);
+        InputStream in = new RateLimitedInputStream(new ByteArrayInputStream(new byte[] {1, 2}), rateLimit);
+        assertEquals(2, in.read(new byte[8]));
+        assertEquals(8, rateLimit.getRemaining());
+        assertEquals(-1, in.read(new byte[8]));
+        assertEquals(-1, in.read());
+        assertEquals(8, rateLimit.getRemaining());
+    }
+
+    @Test
+    void readFailureReturnsBytes() {
+        RateLimit rateLimit = new ConcurrentRateLimit(10, 10, TimeUnit.SECONDS);
+        InputStream in = new RateLimitedInputStream(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("broken");
+            }
+        }, rateLimit);
+        assertThrows(IOException.class, () -> in.read(new byte[4]));
+        assertThrows(IOException.class, in::read);
+        assertEquals(10, rateLimit.getRemaining());
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.cap5lut.ratelimits;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.cap5lut.ratelimits.Measurement.measure;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RateLimitedOutputStreamTest {
+
+    @Test
+    void write() {
+        measure(() -> {
+            ByteArrayOutputStream target = new ByteArrayOutputStream();
+            RateLimit rateLimit = new ConcurrentRateLimit(4, 250, TimeUnit.MILLISECONDS);
+            OutputStream out = new RateLimitedOutputStream(target, rateLimit);
+            out.write(new byte[] {1, 2, 3, 4, 5, 6});
+            out.write(7);
+            assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6, 7}, target.toByteArray());
+            assertEquals(1, rateLimit.getRemaining());
+            return null;
+        }).assertEquals(250, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void minChunkSize() {
+        measure(() -> {
+            RateLimit rateLimit = new ConcurrentRateLimit(10, 250, TimeUnit.MILLISECONDS);
+            OutputStream out = new RateLimitedOutputStream(new ByteArrayOutputStream(), rateLimit, 4);
+            out.write(new byte[8]);
+            out.write(new byte[3]);
+            assertEquals(7, rateLimit.getRemaining());
+            return null;
+        }).assertEquals(250, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void writeFailureReturnsBytes() {
+        RateLimit rateLimit = new ConcurrentRateLimit(10, 10, TimeUnit.SECONDS);
+        OutputStream out = new RateLimitedOutputStream(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("broken");
+            }
+        }, rateLimit);
+        assertThrows(IOException.class, () -> out.write(new byte[4]));
+        assertThrows(IOException.class, () -> out.write(1));
+        assertEquals(10, rateLimit.getRemaining());
+    }
+
+    @Test
+    void sharedLimit() throws Exception {
+        HierarchicalRateLimit shared = new HierarchicalRateLimit(10, 10, TimeUnit.SECONDS);
+        HierarchicalRateLimit limitB = shared.createChild(4, 10);
+        OutputStream a = new RateLimitedOutputStream(new ByteArrayOutputStream(), shared.createChild(4, 10));
+        OutputStream b = new RateLimitedOutputStream(new ByteArrayOutputStream(), limitB);
+        a.write(new byte[5]);
+        b.write(new byte[3]);
+        assertEquals(2, limitB.getRemaining());
+    }
+}
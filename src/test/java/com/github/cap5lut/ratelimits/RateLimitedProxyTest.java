@@ -0,0 +1,137 @@
+package com.github.cap5lut.ratelimits;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.github.cap5lut.ratelimits.Measurement.measure;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitedProxyTest {
+    @Limited("global")
+    interface Api {
+        @Limited("send")
+        int send(int value) throws InterruptedException;
+
+        int receive();
+
+        String unlimited();
+    }
+
+    @Limited("global")
+    interface ExtendedApi extends Api {
+        static ExtendedApi create() {
+            return null;
+        }
+
+        @Override
+        int receive();
+
+        default int receiveTwice() {
+            return receive() + receive();
+        }
+    }
+
+    interface UnboundApi {
+        @Limited("missing")
+        void call();
+    }
+
+    private static class ExtendedApiImpl extends ApiImpl implements ExtendedApi {
+    }
+
+    private static class ApiImpl implements Api {
+        @Override
+        public int send(int value) {
+            if(value < 0) {
+                throw new IllegalArgumentException("negative value");
+            }
+            return value;
+        }
+
+        @Override
+        public int receive() {
+            return 1;
+        }
+
+        @Override
+        public String unlimited() {
+            return "unlimited";
+        }
+    }
+
+    @Test
+    void annotatedLimits() throws InterruptedException {
+        RateLimit global = new ConcurrentRateLimit(10, 10, TimeUnit.SECONDS);
+        RateLimit send = new ConcurrentRateLimit(5, 10, TimeUnit.SECONDS);
+        Api api = RateLimitedProxy.builder(Api.class, new ApiImpl())
+                .bind("global", global)
+                .bind("send", send)
+                .build();
+
+        assertEquals(3, api.send(3));
+        assertEquals(9, global.getRemaining());
+        assertEquals(4, send.getRemaining());
+
+        assertEquals(1, api.receive());
+        assertEquals(8, global.getRemaining());
+        assertEquals(4, send.getRemaining());
+    }
+
+    @Test
+    void builderLimits() {
+        RateLimit global = new ConcurrentRateLimit(10, 10, TimeUnit.SECONDS);
+        RateLimit extra = new ConcurrentRateLimit(1, 250, TimeUnit.MILLISECONDS);
+        Api api = RateLimitedProxy.builder(Api.class, new ApiImpl())
+                .bind("global", global)
+                .bind("send", global)
+                .limit("unlimited", extra)
+                .build();
+
+        measure(() -> {
+            api.unlimited();
+            return api.unlimited();
+        }).assertEquals(250, TimeUnit.MILLISECONDS);
+        assertEquals(8, global.getRemaining());
+    }
+
+    @Test
+    void exceptions() {
+        RateLimit global = new ConcurrentRateLimit(10, 10, TimeUnit.SECONDS);
+        Api api = RateLimitedProxy.builder(Api.class, new ApiImpl())
+                .bind("global", global)
+                .bind("send", global)
+                .build();
+        assertThrows(IllegalArgumentException.class, () -> api.send(-1));
+    }
+
+    @Test
+    void inheritedMethods() throws InterruptedException {
+        RateLimit global = new ConcurrentRateLimit(10, 10, TimeUnit.SECONDS);
+        RateLimit send = new ConcurrentRateLimit(5, 10, TimeUnit.SECONDS);
+        ExtendedApi impl = new ExtendedApiImpl();
+        ExtendedApi api = RateLimitedProxy.builder(ExtendedApi.class, impl)
+                .bind("global", global)
+                .bind("send", send)
+                .build();
+
+        assertEquals(3, api.send(3));
+        assertEquals(9, global.getRemaining());
+        assertEquals(4, send.getRemaining());
+
+        assertEquals(2, api.receiveTwice());
+        assertEquals(8, global.getRemaining());
+
+        assertEquals(impl.hashCode(), api.hashCode());
+        assertEquals(impl.toString(), api.toString());
+        assertTrue(api.equals(impl));
+        assertEquals(8, global.getRemaining());
+    }
+
+    @Test
+    void unboundName() {
+        assertThrows(IllegalStateException.class, () -> RateLimitedProxy.builder(UnboundApi.class, () -> {}).build());
+    }
+}
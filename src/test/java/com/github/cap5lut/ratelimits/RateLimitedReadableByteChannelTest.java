@@ -0,0 +1,37 @@
+package com.github.cap5lut.ratelimits;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RateLimitedReadableByteChannelTest {
+
+    @Test
+    void read() throws Exception {
+        RateLimit rateLimit = new ConcurrentRateLimit(4, 10, TimeUnit.SECONDS);
+        ReadableByteChannel channel = new RateLimitedReadableByteChannel(
+                Channels.newChannel(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6})), rateLimit);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(8);
+        assertEquals(4, channel.read(buffer));
+        assertEquals(4, buffer.position());
+        assertEquals(8, buffer.limit());
+        assertEquals(0, rateLimit.getRemaining());
+    }
+
+    @Test
+    void readReturnsUnused() throws Exception {
+        RateLimit rateLimit = new ConcurrentRateLimit(10, 10, TimeUnit.SECONDS);
+        ReadableByteChannel channel = new RateLimitedReadableByteChannel(
+                Channels.newChannel(new ByteArrayInputStream(new byte[] {1, 2})), rateLimit);
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        assertEquals(2, channel.read(buffer));
+        assertEquals(-1, channel.read(buffer));
+        assertEquals(8, rateLimit.getRemaining());
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.cap5lut.ratelimits;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.cap5lut.ratelimits.Measurement.measure;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class RateLimitedWritableByteChannelTest {
+
+    @Test
+    void write() {
+        measure(() -> {
+            ByteArrayOutputStream target = new ByteArrayOutputStream();
+            RateLimit rateLimit = new ConcurrentRateLimit(4, 250, TimeUnit.MILLISECONDS);
+            WritableByteChannel channel = new RateLimitedWritableByteChannel(Channels.newChannel(target), rateLimit);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(6);
+            buffer.put(new byte[] {1, 2, 3, 4, 5, 6}).flip();
+            assertEquals(6, channel.write(buffer));
+            assertFalse(buffer.hasRemaining());
+            assertEquals(6, buffer.limit());
+            assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6}, target.toByteArray());
+            return null;
+        }).assertEquals(250, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,50 @@
+package com.github.cap5lut.ratelimits;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReservationTest {
+
+    @Test
+    void cancel() {
+        RateLimit rateLimit = new ConcurrentRateLimit(2, 10, TimeUnit.SECONDS);
+        Reservation reservation = rateLimit.reserve(2);
+        assertEquals(0, rateLimit.getRemaining());
+        assertTrue(reservation.cancel());
+        assertEquals(2, rateLimit.getRemaining());
+    }
+
+    @Test
+    void getDelay() {
+        RateLimit rateLimit = new ConcurrentRateLimit(1, 10, TimeUnit.SECONDS);
+        rateLimit.reserve();
+        Reservation reservation = rateLimit.reserve();
+        long delay = reservation.getDelay(TimeUnit.MILLISECONDS);
+        assertTrue(delay > 9000 && delay <= 10000);
+    }
+
+    @Test
+    void getRateLimit() {
+        RateLimit rateLimit = new ConcurrentRateLimit(1, 10, TimeUnit.SECONDS);
+        assertSame(rateLimit, rateLimit.reserve().getRateLimit());
+    }
+
+    @Test
+    void delayQueue() throws InterruptedException {
+        RateLimit rateLimit = new ConcurrentRateLimit(1, 250, TimeUnit.MILLISECONDS);
+        DelayQueue<Reservation> queue = new DelayQueue<>();
+        Reservation first = rateLimit.reserve();
+        Reservation second = rateLimit.reserve();
+        queue.add(second);
+        queue.add(first);
+        assertSame(first, queue.take());
+        assertSame(second, queue.take());
+        assertTrue(second.getDelay() <= 0);
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.cap5lut.ratelimits;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TraceTest {
+    @Test
+    void poisson() {
+        long end = TimeUnit.SECONDS.toNanos(10);
+        Trace trace = Trace.poisson(1000, 10, TimeUnit.SECONDS, 1);
+        Trace repeated = Trace.poisson(1000, 10, TimeUnit.SECONDS, 1);
+        long previous = 0;
+        long arrivals = 0;
+        long arrival;
+        while((arrival = trace.next()) >= 0) {
+            assertTrue(arrival >= previous && arrival < end);
+            assertEquals(arrival, repeated.next());
+            previous = arrival;
+            arrivals++;
+        }
+        assertEquals(-1, repeated.next());
+        assertTrue(arrivals > 9500 && arrivals < 10500, "arrivals: " + arrivals);
+    }
+
+    @Test
+    void bursty() {
+        long end = TimeUnit.SECONDS.toNanos(10);
+        Trace trace = Trace.bursty(2000, 0, 100, 100, 10, TimeUnit.SECONDS, 1);
+        long previous = 0;
+        long arrivals = 0;
+        long arrival;
+        while((arrival = trace.next()) >= 0) {
+            assertTrue(arrival >= previous && arrival < end);
+            previous = arrival;
+            arrivals++;
+        }
+        assertTrue(arrivals > 5000 && arrivals < 15000, "arrivals: " + arrivals); // bursts half of the time
+    }
+
+    @Test
+    void csv() throws IOException {
+        Path file = Files.createTempFile("trace", ".csv");
+        try {
+            Files.write(file, Arrays.asList("# recorded arrivals", "timestamp,key", "1000.5,a", "", " 1001 ,b",
+                    "1003.5"), StandardCharsets.UTF_8);
+            Trace trace = Trace.csv(file);
+            assertEquals(0, trace.next());
+            assertEquals(TimeUnit.MICROSECONDS.toNanos(500), trace.next());
+            assertEquals(TimeUnit.MILLISECONDS.toNanos(3), trace.next());
+            assertEquals(-1, trace.next());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.cap5lut.ratelimits;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class WarmingUpRateLimitTest extends RateLimitTest {
+    WarmingUpRateLimitTest() {
+        super((capacity, resetInterval, resetUnit) -> new WarmingUpRateLimit(capacity, resetInterval, resetUnit, 1,
+                resetInterval, resetInterval, resetUnit, RateLimit.defaultYielder));
+    }
+
+    @Test
+    void warmUp() throws InterruptedException {
+        WarmingUpRateLimit rateLimit = new WarmingUpRateLimit(9, 100, TimeUnit.MILLISECONDS, 1 / 3.0d, 200, 200,
+                TimeUnit.MILLISECONDS, RateLimit.defaultYielder);
+        assertEquals(3, rateLimit.getColdCapacity());
+        assertEquals(3, rateLimit.getRateCapacity());
+        rateLimit.acquireAndGetRateID(3);
+        assertFalse(rateLimit.tryAcquire());
+
+        rateLimit.acquire();
+        assertEquals(6, rateLimit.getRateCapacity());
+        rateLimit.acquireAndGetRateID(5);
+
+        rateLimit.acquire();
+        assertEquals(9, rateLimit.getRateCapacity());
+        assertEquals(9, rateLimit.getCapacity());
+    }
+
+    @Test
+    void coolDown() throws InterruptedException {
+        WarmingUpRateLimit rateLimit = new WarmingUpRateLimit(9, 100, TimeUnit.MILLISECONDS, 1 / 3.0d, 100, 200,
+                TimeUnit.MILLISECONDS, RateLimit.defaultYielder);
+        rateLimit.acquireAndGetRateID(3);
+        rateLimit.acquire();
+        assertEquals(9, rateLimit.getRateCapacity());
+
+        Thread.sleep(350); // the two rates after the current one stay idle
+        assertEquals(3, rateLimit.getRateCapacity());
+    }
+
+    @Test
+    void acquireExceedingRateCapacity() {
+        WarmingUpRateLimit rateLimit = new WarmingUpRateLimit(9, 10, TimeUnit.SECONDS);
+        assertThrows(IllegalArgumentException.class, () -> rateLimit.acquireAndGetRateID(9));
+        assertEquals(-1, rateLimit.tryAcquireAndGetRateID(9));
+        assertEquals(3, rateLimit.getRemaining());
+    }
+}